@@ -0,0 +1,33 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import android.os.Debug;
+import android.os.Trace;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Traces {@link PerfLog} spans as android.os.Trace sections and counts allocations with the ART
+ * runtime stats
+ */
+class AndroidTracer implements PerfLog.Tracer {
+    @Override
+    public void beginSection(@NonNull String name) {
+        Trace.beginSection(name);
+    }
+
+    @Override
+    public void endSection() {
+        Trace.endSection();
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        String stat = Debug.getRuntimeStat("art.gc.bytes-allocated");
+        if (stat == null) return -1;
+        try {
+            return Long.parseLong(stat);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
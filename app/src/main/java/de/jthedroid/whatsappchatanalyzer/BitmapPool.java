@@ -0,0 +1,64 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Pool of ARGB_8888 bitmaps keyed by size, so graphs that are rendered again at the same size
+ * don't allocate a new bitmap every time. The least recently released bitmaps are recycled once
+ * the pool holds more than maxBytes.
+ */
+class BitmapPool {
+    private final long maxBytes;
+    private long bytes = 0;
+    private final HashMap<Long, ArrayDeque<Bitmap>> bySize = new HashMap<>();
+    private final ArrayDeque<Bitmap> lru = new ArrayDeque<>();  //oldest first
+
+    BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    private static long key(int w, int h) {
+        return ((long) w << 32) | h;
+    }
+
+    /**
+     * @return a cleared bitmap of the given size
+     */
+    @NonNull
+    synchronized Bitmap acquire(int w, int h) {
+        ArrayDeque<Bitmap> free = bySize.get(key(w, h));
+        Bitmap b = free == null ? null : free.pollLast();
+        if (b == null) return Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        lru.remove(b);
+        bytes -= b.getAllocationByteCount();
+        b.eraseColor(Color.TRANSPARENT);
+        return b;
+    }
+
+    /**
+     * Returns b to the pool; b must not be used by the caller anymore
+     */
+    synchronized void release(@NonNull Bitmap b) {
+        if (b.isRecycled()) return;
+        long key = key(b.getWidth(), b.getHeight());
+        ArrayDeque<Bitmap> free = bySize.get(key);
+        if (free == null) bySize.put(key, free = new ArrayDeque<>());
+        free.addLast(b);
+        lru.addLast(b);
+        bytes += b.getAllocationByteCount();
+        while (bytes > maxBytes && !lru.isEmpty()) {
+            Bitmap old = lru.pollFirst();
+            ArrayDeque<Bitmap> sameSize = bySize.get(key(old.getWidth(), old.getHeight()));
+            sameSize.remove(old);
+            if (sameSize.isEmpty()) bySize.remove(key(old.getWidth(), old.getHeight()));
+            bytes -= old.getAllocationByteCount();
+            old.recycle();
+        }
+    }
+}
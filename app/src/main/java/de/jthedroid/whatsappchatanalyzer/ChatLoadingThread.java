@@ -1,12 +1,19 @@
 package de.jthedroid.whatsappchatanalyzer;
 
 import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 
-import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import static de.jthedroid.whatsappchatanalyzer.LoadingStage.DONE;
 import static de.jthedroid.whatsappchatanalyzer.LoadingStage.ERROR;
@@ -14,32 +21,144 @@ import static de.jthedroid.whatsappchatanalyzer.LoadingStage.LOADING_FILE;
 import static de.jthedroid.whatsappchatanalyzer.LoadingStage.OPENING_FILE;
 
 class ChatLoadingThread extends Thread {
+    private static final String FORMAT_KEY_PREFIX = "chat_format_";
     private final ContentResolver contentResolver;
     private final Uri uri;
     private final LoadingInfoProvider lip;
+    private final SharedPreferences preferences;
+    private final File cacheDir;
+    private final ChatSnapshotCache snapshots;
 
-    ChatLoadingThread(ContentResolver contentResolver, Uri uri, LoadingInfoProvider lip) {
-        this.contentResolver = contentResolver;
+    ChatLoadingThread(Context context, Uri uri, LoadingInfoProvider lip) {
+        this.contentResolver = context.getContentResolver();
         this.uri = uri;
         this.lip = lip;
+        this.preferences = context.getSharedPreferences(context.getString(R.string.preference_file_key), Context.MODE_PRIVATE);
+        this.cacheDir = context.getCacheDir();
+        this.snapshots = new ChatSnapshotCache(cacheDir);
     }
 
     @Override
     public void run() {
         super.run();
-        Chat chat = new Chat();
         try {
             lip.loadingStage.postValue(OPENING_FILE);
-            InputStream is = contentResolver.openInputStream(uri);
-            InputStreamReader isr = new InputStreamReader(is);
-            BufferedReader br = new BufferedReader(isr);
+            lip.loadingProgress.postValue(null);
+            PerfLog.Span span = PerfLog.begin("load.read");
+            ByteBuffer data;
+            try {
+                data = map();
+                span.count = data.limit();
+            } finally {
+                span.end();
+            }
+            span = PerfLog.begin("load.snapshot");
+            long fingerprint = ChatSnapshot.fingerprint(data);
+            Chat chat = snapshots.load(data, fingerprint, lip);
+            span.end();
+            if (chat != null) {
+                lip.loadingStage.postValue(DONE);
+                lip.setChat(chat);
+                prepareInBackground(chat);
+                return;
+            }
             lip.loadingStage.postValue(LOADING_FILE);
-            chat.init(br, lip);
+            String formatKey = FORMAT_KEY_PREFIX + uri;
+            ChatFormat known = ChatFormat.fromString(preferences.getString(formatKey, null));
+            span = PerfLog.begin("load.formatDetect");
+            ChatFormat format = ChatFormatDetector.detect(data, known);
+            span.end();
+            if (format.strict && format != known) {
+                preferences.edit().putString(formatKey, format.toString()).apply();
+            }
+            //a new export of a cached chat only needs its new messages parsed
+            span = PerfLog.begin("load.parse");
+            ChatSnapshotCache.Restored prefix;
+            try {
+                prefix = snapshots.loadPrefix(data, lip);
+                if (prefix != null) {
+                    chat = prefix.chat;
+                    chat.extend(data, format);
+                } else {
+                    chat = new Chat();
+                    chat.init(data, format, lip);
+                }
+                span.count = chat.getMsgCount();
+            } finally {
+                span.end();
+            }
             lip.loadingStage.postValue(chat.isValid() ? DONE : ERROR);
             lip.setChat(chat.isValid() ? chat : null);
-        } catch (IOException e) {
+            //the chat is complete and no longer changes, so this thread can write the snapshot
+            if (chat.isValid()) {
+                prepareInBackground(chat);
+                span = PerfLog.begin("load.snapshotStore");
+                snapshots.store(chat, data, fingerprint, prefix);
+                span.end();
+            }
+        } catch (IOException | InterruptedException e) {
             e.printStackTrace();
             lip.loadingStage.postValue(ERROR);
         }
     }
+
+    /**
+     * Builds the search index and counts the words of a restored chat in the background, so both
+     * are usually ready when they are needed
+     */
+    private static void prepareInBackground(final Chat chat) {
+        TaskScheduler scheduler = TaskScheduler.getInstance();
+        scheduler.submit("searchIndex" + System.identityHashCode(chat), TaskScheduler.PRIORITY_PREFETCH, new Runnable() {
+            @Override
+            public void run() {
+                chat.getSearchIndex();
+            }
+        });
+        scheduler.submit("tokenStats" + System.identityHashCode(chat), TaskScheduler.PRIORITY_PREFETCH, new Runnable() {
+            @Override
+            public void run() {
+                chat.getTokenStats();
+            }
+        });
+    }
+
+    /**
+     * Maps the export into memory. If the content provider doesn't hand out a regular file, the
+     * stream is copied into a private file first.
+     */
+    private ByteBuffer map() throws IOException {
+        ParcelFileDescriptor pfd = contentResolver.openFileDescriptor(uri, "r");
+        if (pfd != null) {
+            try (FileInputStream fis = new ParcelFileDescriptor.AutoCloseInputStream(pfd);
+                 FileChannel channel = fis.getChannel()) {
+                long size = channel.size();
+                if (size > 0) return map(channel, size);
+            } catch (IOException e) {
+                //not a regular file (e.g. a pipe), fall back to copying the stream
+            }
+        }
+        File copy = File.createTempFile("import", ".txt", cacheDir);
+        try {
+            try (InputStream is = contentResolver.openInputStream(uri);
+                 FileOutputStream fos = new FileOutputStream(copy)) {
+                if (is == null) throw new IOException("Could not open " + uri);
+                byte[] buf = new byte[64 * 1024];
+                int read;
+                while ((read = is.read(buf)) != -1) fos.write(buf, 0, read);
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(copy, "r");
+                 FileChannel channel = raf.getChannel()) {
+                return map(channel, channel.size());
+            }
+        } finally {
+            //the mapping stays valid after the file is deleted
+            //noinspection ResultOfMethodCallIgnored
+            copy.delete();
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) throw new IOException("File too large: " + size);
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
 }
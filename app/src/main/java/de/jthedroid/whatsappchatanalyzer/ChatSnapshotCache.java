@@ -0,0 +1,220 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Cache of parsed chats in the app's cache directory, one {@link ChatSnapshot} per export, keyed by
+ * the export's fingerprint. Snapshots don't contain the export, they are restored together with
+ * the export that is loaded, after checking the hashes of all its blocks. Snapshots of another
+ * version are ignored and deleted. The least recently used snapshots are deleted once the cache
+ * grows beyond {@link #MAX_CACHE_SIZE}.
+ * <p>
+ * When a chat is exported again with new messages, the snapshot of the old export is restored and
+ * extended in place, so neither loading nor storing costs more with a longer history.
+ */
+class ChatSnapshotCache {
+    private static final String TAG = "ChatSnapshotCache";
+    private static final long MAX_CACHE_SIZE = 256L * 1024 * 1024;
+    private static final String SUFFIX = ".snapshot";
+
+    private final File dir;
+
+    ChatSnapshotCache(@NonNull File cacheDir) {
+        dir = new File(cacheDir, "snapshots");
+    }
+
+    private File file(long fingerprint) {
+        return new File(dir, String.format(Locale.ROOT, "%016x", fingerprint) + SUFFIX);
+    }
+
+    /**
+     * @return the restored chat, or null if there is no usable snapshot of data
+     */
+    @Nullable
+    Chat load(@NonNull ByteBuffer data, long fingerprint, @NonNull LoadingInfoProvider lip) {
+        File file = file(fingerprint);
+        if (!file.isFile()) return null;
+        Restored restored = restore(file, fingerprint, data.limit(), data, lip);
+        return restored == null ? null : restored.chat;
+    }
+
+    /**
+     * Looks for the largest snapshot of an export that data starts with, as it happens when a chat
+     * is exported again after new messages were written. Candidates are found by the
+     * {@link ChatSnapshot#fingerprint(ByteBuffer) fingerprint} of the prefix and then verified
+     * block by block, largest first.
+     *
+     * @return the snapshot, whose chat has data as its text arena and is to be
+     * {@link Chat#extend extended}, or null if there is no such snapshot
+     */
+    @Nullable
+    Restored loadPrefix(@NonNull ByteBuffer data, @NonNull LoadingInfoProvider lip) {
+        File[] files = dir.listFiles();
+        if (files == null) return null;
+        ArrayList<Candidate> candidates = new ArrayList<>();
+        for (File f : files) {
+            if (!f.getName().endsWith(SUFFIX)) continue;
+            try (RandomAccessFile raf = new RandomAccessFile(f, "r");
+                 FileChannel channel = raf.getChannel()) {
+                ChatSnapshot.Header header = ChatSnapshot.Header.read(channel);
+                if (header == null || header.exportSize >= data.limit()) continue;
+                ByteBuffer prefix = data.duplicate();
+                prefix.limit((int) header.exportSize);
+                if (ChatSnapshot.fingerprint(prefix) == header.fingerprint) candidates.add(new Candidate(f, header));
+            } catch (IOException e) {
+                Log.w(TAG, "could not read " + f, e);
+            }
+        }
+        Collections.sort(candidates);
+        for (Candidate c : candidates) {
+            Restored restored = restore(c.file, c.header.fingerprint, c.header.exportSize, data, lip);
+            if (restored != null) return restored;
+        }
+        return null;
+    }
+
+    @Nullable
+    private Restored restore(File file, long fingerprint, long size, ByteBuffer data, LoadingInfoProvider lip) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ChatSnapshot.Header header = ChatSnapshot.Header.read(channel);
+            if (header == null || header.fingerprint != fingerprint || header.exportSize != size) {
+                delete(file);
+                return null;
+            }
+            //a snapshot of another export with the same fingerprint is replaced when data is stored
+            long[] hashes = header.readBlockHashes(channel);
+            if (!ChatSnapshot.matches(hashes, data, size)) return null;
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            Chat chat = ChatSnapshot.read(channel, header, data, lip);
+            return chat.isValid() ? new Restored(chat, file, header, hashes) : null;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "could not read " + file, e);
+            delete(file);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a snapshot of chat, which was parsed from data, and evicts old snapshots if the cache
+     * is too large. Chats whose snapshot alone would exceed the cache aren't stored. Errors are
+     * only logged, as the snapshot is just an optimization.
+     *
+     * @param prefix the snapshot chat was restored from before it was extended, or null if it was
+     *               parsed completely. Its file is extended and renamed instead of writing a new one.
+     */
+    void store(@NonNull Chat chat, @NonNull ByteBuffer data, long fingerprint, @Nullable Restored prefix) {
+        if (ChatSnapshot.estimateSize(chat) > MAX_CACHE_SIZE) return;
+        File file = file(fingerprint);
+        if (!dir.isDirectory() && !dir.mkdirs()) return;
+        boolean appended = prefix != null && append(chat, data, fingerprint, prefix);
+        File written = appended ? prefix.file : new File(dir, file.getName() + ".tmp");
+        try {
+            if (!appended) {
+                try (RandomAccessFile raf = new RandomAccessFile(written, "rw");
+                     FileChannel channel = raf.getChannel()) {
+                    raf.setLength(0);
+                    ChatSnapshot.write(chat, data, fingerprint, channel);
+                }
+            }
+            if (!written.renameTo(file)) throw new IOException("could not rename " + written);
+        } catch (IOException e) {
+            Log.w(TAG, "could not write " + file, e);
+            delete(written);
+            return;
+        }
+        evict(file);
+    }
+
+    /**
+     * @return whether the snapshot of prefix was extended to one of chat, which is false if it has
+     * been evicted or replaced since it was restored
+     */
+    private boolean append(Chat chat, ByteBuffer data, long fingerprint, Restored prefix) {
+        if (!prefix.file.isFile()) return false;
+        try (RandomAccessFile raf = new RandomAccessFile(prefix.file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            ChatSnapshot.Header header = ChatSnapshot.Header.read(channel);
+            if (header == null || header.fingerprint != prefix.header.fingerprint || header.exportSize != prefix.header.exportSize) {
+                return false;
+            }
+            ChatSnapshot.append(chat, data, fingerprint, channel, header, prefix.blockHashes);
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "could not extend " + prefix.file, e);
+            delete(prefix.file);
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the least recently used snapshots until the cache fits its budget, but never deletes
+     * keep, the snapshot that was just written
+     */
+    private void evict(File keep) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        long total = keep.length();
+        for (File f : files) {
+            if (f.equals(keep)) continue;
+            if (total + f.length() > MAX_CACHE_SIZE) delete(f);
+            else total += f.length();
+        }
+    }
+
+    private static void delete(File file) {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    /**
+     * A restored snapshot
+     */
+    static class Restored {
+        final Chat chat;
+        private final File file;
+        private final ChatSnapshot.Header header;
+        private final long[] blockHashes;
+
+        private Restored(Chat chat, File file, ChatSnapshot.Header header, long[] blockHashes) {
+            this.chat = chat;
+            this.file = file;
+            this.header = header;
+            this.blockHashes = blockHashes;
+        }
+    }
+
+    /**
+     * A snapshot whose fingerprint matches a prefix of the loaded export, the largest comes first
+     */
+    private static class Candidate implements Comparable<Candidate> {
+        final File file;
+        final ChatSnapshot.Header header;
+
+        Candidate(File file, ChatSnapshot.Header header) {
+            this.file = file;
+            this.header = header;
+        }
+
+        @Override
+        public int compareTo(@NonNull Candidate o) {
+            return Long.compare(o.header.exportSize, header.exportSize);
+        }
+    }
+}
@@ -1,40 +1,71 @@
 package de.jthedroid.whatsappchatanalyzer;
 
-import android.util.Log;
-
+import androidx.annotation.NonNull;
 import androidx.lifecycle.MutableLiveData;
 
-import java.util.HashMap;
-import java.util.Objects;
-
-enum LoadingStage {
-    OPENING_FILE,
-    LOADING_FILE,
-    PROCESSING,
-    DONE,
-    ERROR
-}
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 class DataStorage implements LoadingInfoProvider {
 
     private static final DataStorage instance = new DataStorage();
-    final private MutableLiveData<HashMap<String, MutableLiveData<GraphData>>> graphDataMap;
-    final private MutableLiveData<HashMap<String, Runnable>> runnableMap;
+    //graphs are recomputed from their runnables when needed again, so they may use an eighth of the heap
+    private static final long DEFAULT_CACHE_BYTES = Runtime.getRuntime().maxMemory() / 8;
+    private final GraphDataCache cache = new GraphDataCache(DEFAULT_CACHE_BYTES);
+    //written by worker threads and read by the UI thread
+    final private ConcurrentHashMap<String, MutableLiveData<GraphData>> graphDataMap = new ConcurrentHashMap<>();
+    final private ConcurrentHashMap<String, Runnable> runnableMap = new ConcurrentHashMap<>();
+    //the chat that graphs may be put for, see putData(String, GraphData, Chat)
+    private volatile Chat currentChat = null;
+    final private Function<String, MutableLiveData<GraphData>> newLiveData = new Function<String, MutableLiveData<GraphData>>() {
+        @Override
+        public MutableLiveData<GraphData> apply(String key) {
+            return new MutableLiveData<>();
+        }
+    };
 
     private DataStorage() {
-        graphDataMap = new MutableLiveData<>();
-        graphDataMap.setValue(new HashMap<String, MutableLiveData<GraphData>>());
-        runnableMap = new MutableLiveData<>();
-        runnableMap.setValue(new HashMap<String, Runnable>());
+        //every screen goes through here before anything is loaded
+        PerfLog.setTracer(new AndroidTracer());
     }
 
     static DataStorage getInstance() {
         return instance;
     }
 
+    /**
+     * @return the cached graph for key, or null. If the graph was computed before but has been
+     * evicted from the cache, it is computed again and posted to its LiveData.
+     */
     GraphData getData(String key) {
-        MutableLiveData<GraphData> data = getMutableLiveData(key);
-        return data == null ? null : data.getValue();
+        GraphData data = cache.get(key);
+        if (data == null) runRunnableInBackground(key, TaskScheduler.PRIORITY_VISIBLE);
+        return data;
+    }
+
+    /**
+     * @return true if the graph for key is cached, without counting as an access
+     */
+    boolean isCached(String key) {
+        return cache.contains(key);
+    }
+
+    GraphDataCache getCache() {
+        return cache;
+    }
+
+    private void evict(List<String> keys) {
+        for (String key : keys) {
+            //drop the reference held by the LiveData, views that show the graph keep their own
+            MutableLiveData<GraphData> data = getMutableLiveData(key);
+            if (data == null) continue;
+            synchronized (data) {
+                //the graph may have been put again since it was evicted
+                if (!cache.contains(key)) data.postValue(null);
+            }
+        }
     }
 
     MutableLiveData<GraphData> getMutableLiveData(String key) {
@@ -42,60 +73,88 @@ class DataStorage implements LoadingInfoProvider {
     }
 
     MutableLiveData<GraphData> getMutableLiveData(String key, boolean createIfNull) {
-        HashMap<String, MutableLiveData<GraphData>> map = graphDataMap.getValue();
-        MutableLiveData<GraphData> data;
-        if (map != null && map.containsKey(key)) {
-            data = map.get(key);
-        } else data = null;
-        if (createIfNull && data == null) {
-            data = new MutableLiveData<>();
-            if (map != null) map.put(key, data);
-        }
-        return data;
+        return createIfNull ? graphDataMap.computeIfAbsent(key, newLiveData) : graphDataMap.get(key);
     }
 
-
     void putData(String key, GraphData graphData) {
-        HashMap<String, MutableLiveData<GraphData>> map = graphDataMap.getValue();
-        if (map == null) {
-            Log.e("DataStorage putData", "map is null");
-            return;
-        }
-        MutableLiveData<GraphData> data = null;
-        if (map.containsKey(key)) {
-            data = map.get(key);
+        putData(key, graphData, null);
+    }
+
+    /**
+     * Like {@link #putData(String, GraphData)}, but drops the graph if source isn't the current chat
+     * anymore, as it happens when a runnable of the previous chat finishes after a new one was set
+     *
+     * @param source the chat graphData was computed from, or null to put it in any case
+     */
+    void putData(String key, GraphData graphData, Chat source) {
+        MutableLiveData<GraphData> data = getMutableLiveData(key, true);
+        List<String> evicted = null;
+        //cache and LiveData change together, so a concurrent eviction can't clear the new graph
+        synchronized (data) {
+            if (source != null && source != currentChat) return;
+            if (graphData == null) cache.remove(key);
+            else evicted = cache.put(key, graphData);
+            data.postValue(graphData);
         }
-        if (data == null) data = new MutableLiveData<>();
-        map.put(key, data);
-        data.postValue(graphData);
+        if (evicted != null) evict(evicted);
     }
 
     @Override
     public void setChat(Chat c) {
+        //graphs and runnables belong to the previous chat, the screens register new ones
+        currentChat = c;
+        for (String key : runnableMap.keySet()) cancelRunnable(key);
+        runnableMap.clear();
+        for (Map.Entry<String, MutableLiveData<GraphData>> e : graphDataMap.entrySet()) {
+            MutableLiveData<GraphData> data = e.getValue();
+            synchronized (data) {
+                cache.remove(e.getKey());
+                data.postValue(null);
+            }
+        }
         chat.postValue(c);
     }
 
+    @Override
+    public void onLoadingStage(@NonNull LoadingStage stage) {
+        loadingStage.postValue(stage);
+    }
+
+    @Override
+    public void onLoadingProgress(@NonNull LoadingProgress progress) {
+        loadingProgress.postValue(progress);
+    }
+
     void runRunnable(String key) {
-        Runnable r = Objects.requireNonNull(runnableMap.getValue()).get(key);
+        Runnable r = runnableMap.get(key);
         if (r != null) r.run();
     }
 
-    void runRunnableInThread(String key) {
-        Runnable r = Objects.requireNonNull(runnableMap.getValue()).get(key);
-        if (r != null) new Thread(r).start();
+    /**
+     * Runs the runnable for key on the {@link TaskScheduler}, unless it is already queued or running
+     *
+     * @param priority {@link TaskScheduler#PRIORITY_VISIBLE} for data that is shown right away,
+     *                 else {@link TaskScheduler#PRIORITY_PREFETCH}
+     */
+    void runRunnableInBackground(String key, int priority) {
+        Runnable r = runnableMap.get(key);
+        if (r != null) TaskScheduler.getInstance().submit(key, priority, r);
     }
 
-    void putRunnable(String key, Runnable r) {
-        Objects.requireNonNull(runnableMap.getValue()).put(key, r);
+    void cancelRunnable(String key) {
+        TaskScheduler.getInstance().cancel(key);
     }
 
-    boolean hasRunnable(String key) {
-        HashMap<String, Runnable> map = runnableMap.getValue();
-        return map != null && map.containsKey(key);
+    void putRunnable(String key, Runnable r) {
+        runnableMap.put(key, r);
     }
 
-    boolean hasData(String key) {
-        HashMap<String, MutableLiveData<GraphData>> map = graphDataMap.getValue();
-        return map != null && map.containsKey(key);
+    /**
+     * Registers r for key unless a runnable is already registered, atomically
+     *
+     * @return true if r was registered, so the caller is the one that should run it
+     */
+    boolean putRunnableIfAbsent(String key, Runnable r) {
+        return runnableMap.putIfAbsent(key, r) == null;
     }
 }
\ No newline at end of file
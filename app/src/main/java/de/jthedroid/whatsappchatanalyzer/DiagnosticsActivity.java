@@ -0,0 +1,74 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Shows what {@link PerfLog} recorded and how well the {@link GraphDataCache} works. Opened by
+ * long pressing the text on the start screen.
+ */
+public class DiagnosticsActivity extends ThemeMenuActivity {
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+        setTitle(R.string.diagnostics);
+        update();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        menu.add(R.string.export_json).setOnMenuItemClickListener(new MenuItem.OnMenuItemClickListener() {
+            @Override
+            public boolean onMenuItemClick(MenuItem menuItem) {
+                Intent intent = new Intent(Intent.ACTION_SEND);
+                intent.setType("application/json");
+                intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.diagnostics));
+                intent.putExtra(Intent.EXTRA_TEXT, PerfLog.getInstance().toJson(
+                        Collections.singletonMap("graphCache", DataStorage.getInstance().getCache().getStats())));
+                startActivity(Intent.createChooser(intent, getString(R.string.export_json)));
+                return true;
+            }
+        });
+        menu.add(R.string.clear).setOnMenuItemClickListener(new MenuItem.OnMenuItemClickListener() {
+            @Override
+            public boolean onMenuItemClick(MenuItem menuItem) {
+                PerfLog.getInstance().clear();
+                update();
+                return true;
+            }
+        });
+        return super.onCreateOptionsMenu(menu);
+    }
+
+    private void update() {
+        PerfLog log = PerfLog.getInstance();
+        StringBuilder s = new StringBuilder();
+        s.append("graph cache: ").append(DataStorage.getInstance().getCache()).append("\n\n");
+        s.append(String.format(Locale.ROOT, "%-20s %5s %9s %8s %9s %9s%n", "stage", "calls", "total ms", "max ms", "count", "alloc KB"));
+        for (PerfLog.Summary sum : log.getSummaries()) {
+            s.append(String.format(Locale.ROOT, "%-20s %5d %9.1f %8.1f %9d %9s%n", sum.stage, sum.calls,
+                    sum.totalNanos / 1e6, sum.maxNanos / 1e6, sum.count, sum.allocBytes < 0 ? "-" : String.valueOf(sum.allocBytes / 1024)));
+        }
+        s.append('\n');
+        //newest first
+        SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss.SSS", Locale.ROOT);
+        ArrayList<PerfLog.Record> records = log.getRecords();
+        for (int i = records.size() - 1; i >= 0; i--) {
+            PerfLog.Record r = records.get(i);
+            s.append(String.format(Locale.ROOT, "%s %-20s %8.1f ms %9d  %s%n", time.format(new Date(r.startMillis)), r.stage,
+                    r.nanos / 1e6, r.count, r.thread));
+        }
+        ((TextView) findViewById(R.id.textViewDiagnostics)).setText(s);
+    }
+}
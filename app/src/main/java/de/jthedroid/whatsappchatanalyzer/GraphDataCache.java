@@ -0,0 +1,147 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * LRU cache of graphs with a budget in bytes instead of a number of entries. An entry weighs
+ * {@link GraphData#getByteSize()}, which is updated on every access because downsampled copies and
+ * slices are added to a graph while it is shown.
+ */
+class GraphDataCache {
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private long bytes = 0;
+    private long hits = 0, misses = 0, evictions = 0;
+
+    GraphDataCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Nullable
+    synchronized GraphData get(String key) {
+        Entry e = entries.get(key);
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        reweigh(e);
+        return e.data;
+    }
+
+    /**
+     * @return true if key is cached; unlike {@link #get(String)} this doesn't count as an access
+     */
+    synchronized boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Adds data for key and evicts the least recently used other entries until the cache fits its
+     * budget. An entry that is larger than the whole budget stays until the next put.
+     *
+     * @return the keys of the evicted entries
+     */
+    @NonNull
+    synchronized List<String> put(String key, @NonNull GraphData data) {
+        Entry e = new Entry(data);
+        Entry old = entries.put(key, e);
+        if (old != null) bytes -= old.bytes;
+        bytes += e.bytes;
+        return trim(key);
+    }
+
+    synchronized void remove(String key) {
+        Entry e = entries.remove(key);
+        if (e != null) bytes -= e.bytes;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private List<String> trim(String keep) {
+        ArrayList<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            if (e.getKey().equals(keep)) continue;
+            bytes -= e.getValue().bytes;
+            it.remove();
+            evicted.add(e.getKey());
+            evictions++;
+        }
+        return evicted;
+    }
+
+    private void reweigh(Entry e) {
+        long size = e.data.getByteSize();
+        bytes += size - e.bytes;
+        e.bytes = size;
+    }
+
+    synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the size, budget and access counts, for the diagnostics screen
+     */
+    @NonNull
+    synchronized Map<String, Long> getStats() {
+        LinkedHashMap<String, Long> stats = new LinkedHashMap<>();
+        stats.put("graphs", (long) entries.size());
+        stats.put("bytes", bytes);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "%d graphs, %d/%d KB, %d hits, %d misses, %d evictions",
+                entries.size(), bytes / 1024, maxBytes / 1024, hits, misses, evictions);
+    }
+
+    private static class Entry {
+        final GraphData data;
+        long bytes;
+
+        Entry(GraphData data) {
+            this.data = data;
+            bytes = data.getByteSize();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Draws a series as batches of line segments with {@link Canvas#drawLines(float[], int, int, Paint)}
+ * instead of one call per segment. A renderer keeps its paint and line buffer, so each thread
+ * should use its own instance.
+ */
+class GraphRenderer {
+    private static final int BATCH_SEGMENTS = 1024;
+
+    private final Paint paint = new Paint();
+    private final float[] lines = new float[BATCH_SEGMENTS * 4];
+    private int count;
+
+    GraphRenderer(int color) {
+        paint.setColor(color);
+        paint.setStrokeWidth(3);
+    }
+
+    /**
+     * @param fromX     the screen x of the scaled x value 0, toX of 1
+     * @param fromY     the screen y of the scaled y value 0 (the x-axis), toY of 1
+     * @param cancelled checked between batches, or null
+     * @return false if drawing was cancelled
+     */
+    boolean draw(@NonNull Canvas c, GraphType type, GraphMode mode, @NonNull float[] valuesX, @NonNull float[] valuesY,
+                 float fromX, float toX, float fromY, float toY, @Nullable BooleanSupplier cancelled) {
+        count = 0;
+        if (valuesX.length == 0) return true;
+        if (type == GraphType.BARGRAPH) {
+            for (int i = 0; i < valuesX.length; i++) {
+                float x = map(valuesX[i], fromX, toX);
+                if (!add(c, x, fromY, x, map(valuesY[i], fromY, toY), cancelled)) return false;
+            }
+        } else if (mode != GraphMode.ZERO) {
+            float lastX = map(valuesX[0], fromX, toX), lastY = map(valuesY[0], fromY, toY);
+            for (int i = 1; i < valuesX.length; i++) {
+                float x = map(valuesX[i], fromX, toX), y = map(valuesY[i], fromY, toY);
+                if (mode == GraphMode.LAST) {
+                    if (!add(c, lastX, lastY, x, lastY, cancelled) || !add(c, x, lastY, x, y, cancelled)) return false;
+                } else if (!add(c, lastX, lastY, x, y, cancelled)) return false;
+                lastX = x;
+                lastY = y;
+            }
+        }
+        flush(c);
+        return true;
+    }
+
+    private boolean add(Canvas c, float x1, float y1, float x2, float y2, BooleanSupplier cancelled) {
+        lines[count++] = x1;
+        lines[count++] = y1;
+        lines[count++] = x2;
+        lines[count++] = y2;
+        if (count < lines.length) return true;
+        flush(c);
+        return cancelled == null || !cancelled.getAsBoolean();
+    }
+
+    private void flush(Canvas c) {
+        if (count > 0) c.drawLines(lines, 0, count, paint);
+        count = 0;
+    }
+
+    private static float map(float val, float from, float to) {
+        return from + (to - from) * val;
+    }
+}
@@ -3,22 +3,37 @@ package de.jthedroid.whatsappchatanalyzer;
 import android.content.Context;
 import android.graphics.*;
 import android.util.AttributeSet;
-import android.util.Log;
+import android.view.GestureDetector;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.Observer;
 
-public class GraphView extends View {  //TODO: add touch interaction: (scrolling, zooming?)
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class GraphView extends View {
+    private static final AtomicInteger viewCount = new AtomicInteger();
+    private static final BitmapPool bitmapPool = new BitmapPool(32 * 1024 * 1024);
     private final Point display;
     private final Paint p;
-    private GraphData graphData;
+    private GraphData graphData, shownData;  //shownData is the part of graphData that is drawn, reduced to the view's width
+    private float viewFrom = 0, viewTo = 1;  //visible range of the scaled x values
+    private float lastFocusX;
+    private final ScaleGestureDetector scaleDetector;
+    private final GestureDetector gestureDetector;
+    private GraphHitTester hitTester;
     private float[] valuesX, valuesY;
     private Bitmap bitmap = null;
-    private final Thread thread;
-    private final GraphViewRunnable runnable;
+    private GraphRenderer renderer;  //for drawing on the UI thread
+    private final String renderKey = "graphViewRender" + viewCount.incrementAndGet();
+    private Future<?> renderFuture;
+    private volatile int renderGeneration = 0;  //incremented for every render request, which cancels the ones before
+    private int renderW, renderH;
     private View loadingView;
-    private float lastW, lastH;
+    private float lastW, lastH, hitTesterW, hitTesterH;
     private float x, y;
     private boolean showTap = false;
     private int highlightIndex;
@@ -33,8 +48,6 @@ public class GraphView extends View {  //TODO: add touch interaction: (scrolling
         p = new Paint();
         display = new Point();
         display.set(500, 250);
-        runnable = new GraphViewRunnable();
-        thread = new Thread(runnable);
         darkTheme = getContext().getSharedPreferences(getContext().getString(R.string.preference_file_key), Context.MODE_PRIVATE).getBoolean(getContext().getString(R.string.preference_key_theme), false);
         textXPos = new Rect();
         textXBox = new Rect();
@@ -48,6 +61,32 @@ public class GraphView extends View {  //TODO: add touch interaction: (scrolling
                 valuesY[i] = (float) java.lang.Math.random();
             }
         }
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScaleBegin(ScaleGestureDetector detector) {
+                if (graphData == null || !graphData.isXSorted()) return false;
+                lastFocusX = detector.getFocusX();
+                return true;
+            }
+
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                //keep the value under the fingers under the fingers, which zooms and pans at once
+                float plotW = getWidth() - 2 * padding, span = viewTo - viewFrom;
+                float anchor = viewFrom + (lastFocusX - padding) / plotW * span;
+                float newSpan = Math.max(graphData.getMinViewSpan(), Math.min(1, span / detector.getScaleFactor()));
+                setView(anchor - (detector.getFocusX() - padding) / plotW * newSpan, newSpan);
+                lastFocusX = detector.getFocusX();
+                return true;
+            }
+        });
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDoubleTap(MotionEvent e) {
+                setView(0, 1);
+                return true;
+            }
+        });
         graphDataObserver = new Observer<GraphData>() {
             @Override
             public void onChanged(@Nullable GraphData graphData) {
@@ -69,11 +108,52 @@ public class GraphView extends View {  //TODO: add touch interaction: (scrolling
 
     public void init(GraphData graphData, View loadingView) {
         this.graphData = graphData;
-        if (graphData != null) {
-            this.valuesX = graphData.getXData();
-            this.valuesY = graphData.getYData();
-        }
+        shownData = null;
+        hitTester = null;
+        showTap = false;
+        viewFrom = 0;
+        viewTo = 1;
         this.loadingView = loadingView;
+        if (bitmap != null) bitmapPool.release(bitmap);  //it shows the old data
+        bitmap = null;
+        if (renderFuture != null) requestRender(renderW, renderH);
+    }
+
+    private void setView(float from, float span) {
+        viewFrom = Math.max(0, Math.min(from, 1 - span));
+        viewTo = viewFrom + span;
+        invalidate();
+    }
+
+    private boolean isZoomed() {
+        return viewTo - viewFrom < 1;
+    }
+
+    /**
+     * @return the screen x of the scaled x value 0 for the current zoom
+     */
+    private float viewLeft(float w) {
+        return padding - (w - 2 * padding) * viewFrom / (viewTo - viewFrom);
+    }
+
+    /**
+     * @return the screen x of the scaled x value 1 for the current zoom
+     */
+    private float viewRight(float w) {
+        return viewLeft(w) + (w - 2 * padding) / (viewTo - viewFrom);
+    }
+
+    private static int plotWidth(int w, float padding) {
+        return Math.max(1, (int) (w - 2 * padding));
+    }
+
+    private void setShownData(GraphData shown) {
+        if (shown == shownData) return;
+        shownData = shown;
+        valuesX = shown.getXData();
+        valuesY = shown.getYData();
+        hitTester = null;
+        showTap = false;
     }
 
     @Override
@@ -92,30 +172,40 @@ public class GraphView extends View {  //TODO: add touch interaction: (scrolling
         }
         int w = getWidth();
         int h = getHeight();
-        if (bitmap == null || bitmap.getWidth() != w || bitmap.getHeight() != h) {
+        if (!isInEditMode() && isZoomed()) {
+            //slices hold at most about four points per pixel, so they are cheap to draw directly
+            setShownData(graphData.slice(viewFrom, viewTo, plotWidth(w, padding)));
+            canvas.save();
+            canvas.clipRect(padding, 0, w - padding, h);
+            getRenderer().draw(canvas, graphData.getGraphType(), graphData.getMode(), valuesX, valuesY, viewLeft(w), viewRight(w), h - padding, padding, null);
+            canvas.restore();
+            setLoadingVisible(false);
+        } else if (isInEditMode()) {
+            getRenderer().draw(canvas, GraphType.DEFAULT, GraphMode.LINEAR, valuesX, valuesY, padding, w - padding, h - padding, padding, null);
+        } else if (bitmap == null || bitmap.getWidth() != w || bitmap.getHeight() != h) {
             setLoadingVisible(true);
-            runnable.set(w, h);
-            if (!runnable.running && !thread.isAlive()) thread.start();
+            if (renderFuture == null || renderW != w || renderH != h) requestRender(w, h);
         } else {
+            if (!isInEditMode()) setShownData(graphData.downsample(plotWidth(w, padding)));
             canvas.drawBitmap(bitmap, 0, 0, null);
             setLoadingVisible(false);
         }
 
-        if (showTap || isInEditMode()) {
+        if ((showTap && shownData != null && bitmapOrZoomed(w, h)) || isInEditMode()) {
             p.setColor(getTransparentColor(50, false));
             if (isInEditMode()) {
-                highlightIndex = findNearestIndex(valuesX, (float) java.lang.Math.random());
+                highlightIndex = (int) (java.lang.Math.random() * valuesX.length);
             }
             float yHighlight = map(valuesY[highlightIndex], h - padding, padding);
-            float xHighlight = map(valuesX[highlightIndex], padding, w - padding);
+            float xHighlight = map(valuesX[highlightIndex], viewLeft(w), viewRight(w));
             canvas.drawLine(xHighlight, padding, xHighlight, h - padding, p);
             canvas.drawLine(padding, yHighlight, w - padding, yHighlight, p);
             p.setColor(getColor(false));
             canvas.drawCircle(xHighlight, yHighlight, 5, p);
             String textX, textY;
             if (!isInEditMode()) {
-                textX = graphData.getXDesc()[highlightIndex];
-                textY = graphData.getYDesc()[highlightIndex];
+                textX = shownData.getXLabel(highlightIndex);
+                textY = shownData.getYLabel(highlightIndex);
             } else textX = textY = "Sample data";
             getTextXBounds(textX, xHighlight, h - padding / 2, w, p);
             getTextYBounds(textY, xHighlight, yHighlight, w, h, p);
@@ -132,6 +222,82 @@ public class GraphView extends View {  //TODO: add touch interaction: (scrolling
         lastH = h;
     }
 
+    private GraphRenderer getRenderer() {
+        if (renderer == null) renderer = new GraphRenderer(getResources().getColor(R.color.colorGraph, null));
+        return renderer;
+    }
+
+    /**
+     * Renders the full graph into a bitmap of size w x h on the {@link TaskScheduler}. A newer
+     * request, a size or data change, cancels it; a cancelled render returns its bitmap to the pool.
+     */
+    private void requestRender(final int w, final int h) {
+        TaskScheduler.getInstance().cancel(renderKey);
+        final int generation = ++renderGeneration;
+        renderW = w;
+        renderH = h;
+        final GraphData data = graphData;
+        final int color = getResources().getColor(R.color.colorGraph, null);
+        if (data == null || w <= 0 || h <= 0) {
+            renderFuture = null;
+            return;
+        }
+        renderFuture = TaskScheduler.getInstance().submit(renderKey, TaskScheduler.PRIORITY_VISIBLE, new Runnable() {
+            @Override
+            public void run() {
+                if (generation != renderGeneration) return;
+                PerfLog.Span span = PerfLog.begin("graph.render");
+                GraphData shown = data.downsample(plotWidth(w, padding));
+                span.count = shown.getXData().length;
+                final Bitmap b = bitmapPool.acquire(w, h);
+                boolean done = new GraphRenderer(color).draw(new Canvas(b), data.getGraphType(), data.getMode(), shown.getXData(), shown.getYData(),
+                        padding, w - padding, h - padding, padding, new BooleanSupplier() {
+                            @Override
+                            public boolean getAsBoolean() {
+                                return generation != renderGeneration;
+                            }
+                        });
+                span.end();
+                if (!done) {
+                    bitmapPool.release(b);
+                    return;
+                }
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != renderGeneration) {
+                            bitmapPool.release(b);
+                            return;
+                        }
+                        if (bitmap != null) bitmapPool.release(bitmap);
+                        bitmap = b;
+                        invalidate();
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (renderFuture != null) requestRender(w, h);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        TaskScheduler.getInstance().cancel(renderKey);
+        renderFuture = null;
+        renderGeneration++;
+        if (bitmap != null) bitmapPool.release(bitmap);
+        bitmap = null;
+    }
+
+    private boolean bitmapOrZoomed(int w, int h) {
+        return isZoomed() || (bitmap != null && bitmap.getWidth() == w && bitmap.getHeight() == h);
+    }
+
     private void setLoadingVisible(boolean show) {
         if (loadingView != null) loadingView.setVisibility(show ? VISIBLE : GONE);
 
@@ -171,11 +337,25 @@ public class GraphView extends View {  //TODO: add touch interaction: (scrolling
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        scaleDetector.onTouchEvent(event);
+        gestureDetector.onTouchEvent(event);
+        if (scaleDetector.isInProgress() || event.getPointerCount() > 1) {
+            showTap = false;
+            invalidate();
+            return true;
+        }
         showTap = true;
         x = event.getX();
         y = event.getY();
-        if (graphData != null)
-            highlightIndex = findNearestIndex(valuesX, unmap(x, padding, lastW - padding));
+        if (shownData != null) {
+            if (hitTester == null || lastW != hitTesterW || lastH != hitTesterH) {
+                hitTester = new GraphHitTester(shownData, viewLeft(lastW), viewRight(lastW), lastH - padding, padding);
+                hitTesterW = lastW;
+                hitTesterH = lastH;
+            }
+            int index = hitTester.findNearest(x, y);
+            if (index >= 0) highlightIndex = index;
+        }
         invalidate();
         return performClick();
     }
@@ -190,34 +370,6 @@ public class GraphView extends View {  //TODO: add touch interaction: (scrolling
         return from + (to - from) * val;
     }
 
-    private float unmap(float val, float from, float to) {
-        return (val - from) / (to - from);
-    }
-
-    private int findNearestIndex(float[] arr, float val) {  //TODO: improve performance (binary search?), linear is really inefficient
-        if (arr.length == 0) return -1;
-        float minDiff = diff(arr[0], val);
-        int index = 0;
-        for (int i = 1; i < arr.length; i++) {
-            float diff = diff(arr[i], val);
-            if (diff < minDiff) {
-                minDiff = diff;
-                index = i;
-            }
-        }
-        return index;
-    }
-
-    private float diff(float f1, float f2) {
-        return f1 > f2 ? f1 - f2 : f2 - f1;
-    }
-
-        /*
-        from + (to - from) * val = newV     // - from
-        val * (to - from) = newV - from     // /(to-from)
-        val = (newV - from) / (to - from)
-         */
-
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
 //            Log.v("[GraphView] onMeasure w", MeasureSpec.toString(widthMeasureSpec));
@@ -231,69 +383,4 @@ public class GraphView extends View {  //TODO: add touch interaction: (scrolling
 //            Log.v("[GraphView] resolved h", Integer.toString(resolvedH));
         setMeasuredDimension(resolvedW, resolvedH);
     }
-
-    private class GraphViewRunnable implements Runnable {
-        int w, h;
-        boolean running = false;
-
-        void set(int w, int h) {
-            this.w = w;
-            this.h = h;
-        }
-
-        @Override
-        public void run() {  //TODO: add styling, text etc.
-            running = true;
-            if (valuesX.length != valuesY.length) {
-                Log.e("GraphView onDraw", "value arrays are not the same size!");
-                return;
-            }
-            Bitmap b = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-            Canvas c = new Canvas(b);
-            if (isInEditMode()) drawDefault(c, GraphMode.LINEAR);
-            else switch (graphData.getGraphType()) {
-                case DEFAULT:
-                    drawDefault(c, graphData.getMode());
-                    break;
-                case BARGRAPH:
-                    drawBarGraph(c);
-                    break;
-            }
-            bitmap = b;
-            postInvalidate();
-            running = false;
-        }
-
-        private void drawDefault(Canvas c, GraphMode graphMode) {
-            p.setColor(getResources().getColor(R.color.colorGraph, null));
-            p.setStrokeWidth(3);
-            float fromX = padding, toX = w - padding;
-            float fromY = h - padding, toY = padding;
-            float lastX = map(valuesX[0], fromX, toX), lastY = map(valuesY[0], fromY, toY);
-            for (int i = 1; i < valuesX.length; i++) {
-                switch (graphMode) {
-                    case LINEAR:
-                        c.drawLine(lastX, lastY, lastX = map(valuesX[i], fromX, toX), lastY = map(valuesY[i], fromY, toY), p);
-                        break;
-                    case LAST:
-                        c.drawLine(lastX, lastY, lastX = map(valuesX[i], fromX, toX), lastY, p);
-                        c.drawLine(lastX, lastY, lastX, lastY = map(valuesY[i], fromY, toY), p);
-                        break;
-                    case ZERO:
-                        break;
-                }
-            }
-        }
-
-        private void drawBarGraph(Canvas c) {
-            p.setColor(getResources().getColor(R.color.colorGraph, null));
-            p.setStrokeWidth(3);
-            float fromX = padding, toX = w - padding;
-            float fromY = h - padding, toY = padding;
-            for (int i = 1; i < valuesX.length; i++) {
-                float x = map(valuesX[i], fromX, toX), y = map(valuesY[i], fromY, toY);
-                c.drawLine(x, fromY, x, y, p);  //TODO: maybe increase width if necessary
-            }
-        }
-    }
 }
@@ -2,10 +2,11 @@ package de.jthedroid.whatsappchatanalyzer;
 
 import androidx.lifecycle.MutableLiveData;
 
-interface LoadingInfoProvider {
+interface LoadingInfoProvider extends LoadingListener {
     MutableLiveData<Chat> chat = new MutableLiveData<>();
     MutableLiveData<String> title = new MutableLiveData<>();
     MutableLiveData<LoadingStage> loadingStage = new MutableLiveData<>();
+    MutableLiveData<LoadingProgress> loadingProgress = new MutableLiveData<>();
 
     void setChat(Chat c);
 }
\ No newline at end of file
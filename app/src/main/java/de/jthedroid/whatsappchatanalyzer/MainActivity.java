@@ -20,6 +20,14 @@ public class MainActivity extends ThemeMenuActivity {
         PackageManager manager = getPackageManager();
         intent = manager.getLaunchIntentForPackage("com.whatsapp");
         findViewById(R.id.buttonOpenWhatsApp).setEnabled(intent != null);
+        //hidden entry to the diagnostics screen
+        findViewById(R.id.textViewWhatsAppInfo).setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                startActivity(new Intent(MainActivity.this, DiagnosticsActivity.class));
+                return true;
+            }
+        });
     }
 
     public void openWhatsAppButtonPressed(View v) {
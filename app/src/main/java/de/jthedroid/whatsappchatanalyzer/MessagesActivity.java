@@ -3,24 +3,32 @@ package de.jthedroid.whatsappchatanalyzer;
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
 import android.os.Bundle;
+import android.text.Spannable;
+import android.text.SpannableString;
+import android.text.style.BackgroundColorSpan;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.SearchView;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.text.DateFormat;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Objects;
 
 public class MessagesActivity extends ThemeMenuActivity implements DateReceiver {
+    private static final String SEARCH_KEY = "messageSearch";
     private RecyclerView recyclerView;
+    private MessagesRecyclerViewAdapter adapter;
+    private int searchGeneration = 0;  //results of older searches are dropped
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -31,7 +39,8 @@ public class MessagesActivity extends ThemeMenuActivity implements DateReceiver
         LinearLayoutManager layoutManager = new LinearLayoutManager(this);
         layoutManager.setStackFromEnd(true);
         recyclerView.setLayoutManager(layoutManager);
-        RecyclerView.Adapter adapter = new MessagesRecyclerViewAdapter(Objects.requireNonNull(DataStorage.getInstance().chat.getValue()).getMessages());
+        adapter = new MessagesRecyclerViewAdapter(Objects.requireNonNull(DataStorage.getInstance().chat.getValue()),
+                getResources().getColor(R.color.colorSearchHighlight, null));
         recyclerView.setAdapter(adapter);
         final View scrollTop = findViewById(R.id.buttonScrollTop), scrollBottom = findViewById(R.id.buttonScrollBottom);
         scrollTop.animate().setDuration(500);
@@ -68,6 +77,37 @@ public class MessagesActivity extends ThemeMenuActivity implements DateReceiver
     public boolean onCreateOptionsMenu(Menu menu) {
         super.onCreateOptionsMenu(menu);
         final MessagesActivity thisActivity = this;
+        MenuItem searchItem = menu.add(R.string.search);
+        final SearchView searchView = new SearchView(this);
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                search(query);
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String query) {
+                if (query.isEmpty()) search(query);
+                return false;
+            }
+        });
+        searchItem.setActionView(searchView);
+        searchItem.setShowAsAction(MenuItem.SHOW_AS_ACTION_IF_ROOM | MenuItem.SHOW_AS_ACTION_COLLAPSE_ACTION_VIEW);
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem menuItem) {
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem menuItem) {
+                search("");
+                return true;
+            }
+        });
         menu.add(R.string.go_to_date).setOnMenuItemClickListener(new MenuItem.OnMenuItemClickListener() {
             @Override
             public boolean onMenuItemClick(MenuItem menuItem) {
@@ -80,14 +120,50 @@ public class MessagesActivity extends ThemeMenuActivity implements DateReceiver
         return true;
     }
 
+    /**
+     * Shows only the messages that match query, or all messages if the query is empty. The search
+     * runs in the background, as the index may still be built.
+     */
+    private void search(String text) {
+        final Chat chat = DataStorage.chat.getValue();
+        if (chat == null) return;
+        final SearchIndex.Query query = new SearchIndex.Query(text);
+        final int generation = ++searchGeneration;
+        TaskScheduler.getInstance().cancel(SEARCH_KEY);
+        if (query.isEmpty()) {
+            adapter.setSearchResult(null, null);
+            scrollBottom(null);
+            return;
+        }
+        TaskScheduler.getInstance().submit(SEARCH_KEY, TaskScheduler.PRIORITY_VISIBLE, new Runnable() {
+            @Override
+            public void run() {
+                final int[] result = chat.getSearchIndex().search(query);
+                recyclerView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != searchGeneration) return;
+                        adapter.setSearchResult(result, query);
+                        scrollBottom(null);
+                        Toast.makeText(MessagesActivity.this, getString(R.string.search_result, result.length), Toast.LENGTH_SHORT).show();
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        TaskScheduler.getInstance().cancel(SEARCH_KEY);
+    }
+
     public void scrollTop(View v) {
         recyclerView.scrollToPosition(0);
     }
 
     public void scrollBottom(View v) {
-        RecyclerView.Adapter adapter = recyclerView.getAdapter();
-        if (adapter != null)
-            recyclerView.scrollToPosition(adapter.getItemCount() - 1);
+        if (adapter.getItemCount() > 0) recyclerView.scrollToPosition(adapter.getItemCount() - 1);
     }
 
     @Override
@@ -95,20 +171,43 @@ public class MessagesActivity extends ThemeMenuActivity implements DateReceiver
         Chat chat = DataStorage.chat.getValue();
         if (chat == null) return;
         int index = chat.getIndexForDate(d.getTime());
-        recyclerView.scrollToPosition(index);
+        if (adapter.getItemCount() > 0) recyclerView.scrollToPosition(adapter.getPosition(index));
     }
 }
 
 class MessagesRecyclerViewAdapter extends RecyclerView.Adapter {
     private final DateFormat dateFormat;
-    private final ArrayList<Message> messages;
+    private final Chat chat;
+    private final int highlightColor;
+    private int[] shownMessages;  //indices of the messages shown, null to show all
+    private SearchIndex.Query query;
 
 
-    MessagesRecyclerViewAdapter(ArrayList<Message> messages) {
-        this.messages = messages;
+    MessagesRecyclerViewAdapter(Chat chat, int highlightColor) {
+        this.chat = chat;
+        this.highlightColor = highlightColor;
         dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT);
     }
 
+    /**
+     * @param messages the indices of the messages to show in ascending order, or null for all
+     * @param query    the query whose matches are highlighted, or null
+     */
+    void setSearchResult(int[] messages, SearchIndex.Query query) {
+        shownMessages = messages;
+        this.query = query;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * @return the position of the message at index, or of the next shown message after it
+     */
+    int getPosition(int index) {
+        if (shownMessages == null) return index;
+        int pos = Arrays.binarySearch(shownMessages, index);
+        return pos >= 0 ? pos : Math.min(-pos - 1, shownMessages.length - 1);
+    }
+
     @NonNull
     @Override
     public MessagesViewHolder onCreateViewHolder(@NonNull ViewGroup viewGroup, int i) {
@@ -121,17 +220,27 @@ class MessagesRecyclerViewAdapter extends RecyclerView.Adapter {
     }
 
     private void onBindViewHolder(MessagesViewHolder holder, int i) {
-        Message m = messages.get(i);
-        holder.tvMessage.setText(m.getMsg());
+        Message m = chat.getMessage(shownMessages == null ? i : shownMessages[i]);
+        holder.tvMessage.setText(query == null ? m.getMsg() : highlight(m.getMsg()));
         holder.tvDate.setText(dateFormat.format(m.getDate()));
         Sender s = m.getSender();
         holder.tvSender.setVisibility(s == null ? View.GONE : View.VISIBLE);
         if (s != null) holder.tvSender.setText(m.getSender().getName());
     }
 
+    private CharSequence highlight(String text) {
+        int[] matches = query.findMatches(text);
+        if (matches.length == 0) return text;
+        SpannableString s = new SpannableString(text);
+        for (int i = 0; i < matches.length; i += 2) {
+            s.setSpan(new BackgroundColorSpan(highlightColor), matches[i], matches[i + 1], Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        return s;
+    }
+
     @Override
     public int getItemCount() {
-        return messages.size();
+        return shownMessages == null ? chat.getMsgCount() : shownMessages.length;
     }
 
     public static class MessagesViewHolder extends RecyclerView.ViewHolder {
@@ -1,6 +1,7 @@
 package de.jthedroid.whatsappchatanalyzer;
 
 import android.os.Bundle;
+import android.widget.TextView;
 
 public class SenderActivity extends ThemeMenuActivity {
 
@@ -11,7 +12,7 @@ public class SenderActivity extends ThemeMenuActivity {
         final Chat c = DataStorage.getInstance().chat.getValue();
         String name = getIntent().getStringExtra(SenderListActivity.SENDER_NAME_EXTRA);
         setTitle(name);
-        final Sender sender = c.senders.get(name);
+        final Sender sender = c.getSender(name);
         final DataStorage ds = DataStorage.getInstance();
         final String key = "senderTotalMessagesGraph" + name;
         TimeGraphFragment tgf = (TimeGraphFragment) getSupportFragmentManager().findFragmentById(R.id.fragmentSenderTotalGraph);
@@ -20,17 +21,25 @@ public class SenderActivity extends ThemeMenuActivity {
             args.putString(TimeGraphFragment.GRAPH_DATA, key);
             tgf.init(args);
             tgf.initGraphView();
-            if (!ds.hasRunnable(key)) {
-                Runnable r = new Runnable() {
-                    @Override
-                    public void run() {
-                        GraphData gD = c.createTotalMessagesGraph(sender);
-                        ds.putData(key, gD);
-                    }
-                };
-                ds.putRunnable(key, r);
-                ds.runRunnableInThread(key);
-            }
+            Runnable r = new Runnable() {
+                @Override
+                public void run() {
+                    GraphData gD = c.createTotalMessagesGraph(sender);
+                    ds.putData(key, gD, c);
+                }
+            };
+            if (ds.putRunnableIfAbsent(key, r)) ds.runRunnableInBackground(key, TaskScheduler.PRIORITY_VISIBLE);
         }
+        ConversationStats stats = c.getConversationStats();
+        int id = sender.getId();
+        StringBuilder replyTargets = new StringBuilder();
+        for (int target : stats.getTopReplyTargets(id, 3)) {
+            if (replyTargets.length() > 0) replyTargets.append(", ");
+            replyTargets.append(c.getSender(target).getName()).append(" (").append(stats.getReplyCount(id, target)).append(')');
+        }
+        TextView conversations = findViewById(R.id.textViewSenderConversations);
+        conversations.setText(SenderListActivity.formatReplyTime(this, stats.getReplyTimes(id)) + "\n"
+                + getString(R.string.replies_to, replyTargets) + "\n"
+                + getString(R.string.sessions_started, stats.getSessionsStarted(id), stats.getSessions(), stats.getTurns(id)));
     }
 }
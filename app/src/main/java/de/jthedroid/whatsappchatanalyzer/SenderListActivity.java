@@ -1,5 +1,6 @@
 package de.jthedroid.whatsappchatanalyzer;
 
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.view.LayoutInflater;
@@ -19,6 +20,8 @@ import java.util.Objects;
 
 public class SenderListActivity extends ThemeMenuActivity {
     public static String SENDER_NAME_EXTRA = "SENDER_NAME_EXTRA";
+    //per instance, as the scheduler wouldn't start the task of a recreated activity while this one's is queued
+    private final String tokenStatsKey = "senderListTokenStats" + System.identityHashCode(this);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -28,9 +31,74 @@ public class SenderListActivity extends ThemeMenuActivity {
         recyclerView.setHasFixedSize(true);
         LinearLayoutManager layoutManager = new LinearLayoutManager(this);
         recyclerView.setLayoutManager(layoutManager);
-        Chat chat = Objects.requireNonNull(DataStorage.getInstance().chat.getValue());
-        RecyclerView.Adapter adapter = new SenderOverviewRecyclerViewAdapter(chat.getSortedSenders(), chat.getMaxMsgCount());
+        final Chat chat = Objects.requireNonNull(DataStorage.getInstance().chat.getValue());
+        final ConversationStats conversations = chat.getConversationStats();
+        final SenderOverviewRecyclerViewAdapter adapter = new SenderOverviewRecyclerViewAdapter(chat.getSortedSenders(), chat.getMaxMsgCount(), conversations);
         recyclerView.setAdapter(adapter);
+        final TextView topTokens = findViewById(R.id.textViewTopTokens);
+        final String conversationSummary = getString(R.string.sessions, conversations.getSessions()) + "\n"
+                + formatReplyTime(this, conversations.getReplyTimes());
+        topTokens.setText(conversationSummary + "\n" + getString(R.string.loading));
+        //the words of a restored chat may still be counted
+        TaskScheduler.getInstance().submit(tokenStatsKey, TaskScheduler.PRIORITY_VISIBLE, new Runnable() {
+            @Override
+            public void run() {
+                final TokenStats stats = chat.getTokenStats();
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        topTokens.setText(conversationSummary + "\n"
+                                + getString(R.string.top_words, formatTop(stats.getWords(), 10, true)) + "\n"
+                                + getString(R.string.top_emoji, formatTop(stats.getEmoji(), 10, true)) + "\n"
+                                + getString(R.string.top_phrases, formatTop(stats.getBigrams(), 5, true)));
+                        adapter.setTokenStats(stats);
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        TaskScheduler.getInstance().cancel(tokenStatsKey);
+    }
+
+    static String formatTop(HeavyHitters h, int k, boolean counts) {
+        return formatTop(h, k, ", ", counts);
+    }
+
+    /**
+     * @return the at most k most frequent keys of h, most frequent first
+     */
+    static String formatTop(HeavyHitters h, int k, String separator, boolean counts) {
+        if (h == null) return "";
+        StringBuilder s = new StringBuilder();
+        for (int c : h.top(k)) {
+            if (s.length() > 0) s.append(separator);
+            s.append(h.getKey(c));
+            if (counts) s.append(String.format(Locale.getDefault(), " (%d)", h.getCount(c)));
+        }
+        return s.toString();
+    }
+
+    /**
+     * @return the median and 90th percentile of the reply times, or an empty string if there are none
+     */
+    static String formatReplyTime(Context context, LogHistogram replyTimes) {
+        if (replyTimes.getCount() == 0) return "";
+        return context.getString(R.string.reply_time, formatDuration(replyTimes.getQuantile(0.5)), formatDuration(replyTimes.getQuantile(0.9)));
+    }
+
+    /**
+     * @return millis as seconds, minutes, hours or days, whichever fits best
+     */
+    static String formatDuration(long millis) {
+        long seconds = millis / 1000;
+        if (seconds < 60) return String.format(Locale.getDefault(), "%d s", seconds);
+        if (seconds < 60 * 60) return String.format(Locale.getDefault(), "%d min", seconds / 60);
+        if (seconds < 24 * 60 * 60) return String.format(Locale.getDefault(), "%.1f h", seconds / 3600f);
+        return String.format(Locale.getDefault(), "%.1f d", seconds / 86400f);
     }
 
     public void toggleSenderButtonVisibility(View v) {
@@ -61,11 +129,19 @@ public class SenderListActivity extends ThemeMenuActivity {
 class SenderOverviewRecyclerViewAdapter extends RecyclerView.Adapter {
     private final ArrayList<Sender> senders;
     private final int maxCount;
+    private final ConversationStats conversations;
+    private TokenStats tokenStats;
 
 
-    SenderOverviewRecyclerViewAdapter(ArrayList<Sender> senders, int maxCount) {
+    SenderOverviewRecyclerViewAdapter(ArrayList<Sender> senders, int maxCount, ConversationStats conversations) {
         this.senders = senders;
         this.maxCount = maxCount;
+        this.conversations = conversations;
+    }
+
+    void setTokenStats(TokenStats tokenStats) {
+        this.tokenStats = tokenStats;
+        notifyDataSetChanged();
     }
 
     @NonNull
@@ -85,6 +161,15 @@ class SenderOverviewRecyclerViewAdapter extends RecyclerView.Adapter {
         holder.tvCount.setText(String.format(Locale.getDefault(), "%d", s.getMsgCount()));
         holder.progressBar.setMax(maxCount);
         holder.progressBar.setProgress(s.getMsgCount());
+        holder.tvTokens.setVisibility(tokenStats == null ? View.GONE : View.VISIBLE);
+        if (tokenStats != null) {
+            String emoji = SenderListActivity.formatTop(tokenStats.getEmoji(s.getId()), 3, " ", false);
+            String words = SenderListActivity.formatTop(tokenStats.getWords(s.getId()), 5, false);
+            holder.tvTokens.setText(emoji.isEmpty() ? words : emoji + "  " + words);
+        }
+        LogHistogram replyTimes = conversations.getReplyTimes(s.getId());
+        holder.tvReplies.setVisibility(replyTimes.getCount() == 0 ? View.GONE : View.VISIBLE);
+        holder.tvReplies.setText(SenderListActivity.formatReplyTime(holder.itemView.getContext(), replyTimes));
         holder.buttonDetails.setVisibility(View.GONE);
         holder.buttonDetails.setAlpha(0);
     }
@@ -96,7 +181,7 @@ class SenderOverviewRecyclerViewAdapter extends RecyclerView.Adapter {
 
     public static class SenderOverviewViewHolder extends RecyclerView.ViewHolder {
 
-        final TextView tvName, tvCount;
+        final TextView tvName, tvCount, tvTokens, tvReplies;
         final ProgressBar progressBar;
         final Button buttonDetails;
 
@@ -104,6 +189,8 @@ class SenderOverviewRecyclerViewAdapter extends RecyclerView.Adapter {
             super(itemView);
             tvName = itemView.findViewById(R.id.textViewName);
             tvCount = itemView.findViewById(R.id.textViewCount);
+            tvTokens = itemView.findViewById(R.id.textViewSenderTokens);
+            tvReplies = itemView.findViewById(R.id.textViewSenderReplies);
             progressBar = itemView.findViewById(R.id.progressBarMsgCount);
             buttonDetails = itemView.findViewById(R.id.buttonGotoSender);
         }
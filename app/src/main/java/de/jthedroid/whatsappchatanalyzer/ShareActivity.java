@@ -5,7 +5,9 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Parcelable;
+import android.text.format.Formatter;
 import android.view.View;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -40,20 +42,14 @@ public class ShareActivity extends ThemeMenuActivity {
                         addFragment(heading, tag);
                     }
                     tag = "graphView1";
-                    if (fragmentIsNew(tag)) {
-                        final String key = tag + "_data";
-                        final TimeGraphFragment tgf = TimeGraphFragment.newInstance(key);
-                        Runnable r = new Runnable() {
-                            @Override
-                            public void run() {
-                                GraphData gD = c.createTotalMessagesGraph();
-                                ds.putData(key, gD);
-                            }
-                        };
-                        ds.putRunnable(key, r);
-                        ds.runRunnableInThread(key);
-                        addFragment(tgf, tag);
-                    }
+                    final String totalKey = tag + "_data";
+                    putGraphRunnable(totalKey, new Runnable() {
+                        @Override
+                        public void run() {
+                            ds.putData(totalKey, c.createTotalMessagesGraph(), c);
+                        }
+                    });
+                    if (fragmentIsNew(tag)) addFragment(TimeGraphFragment.newInstance(totalKey), tag);
 
                     tag = "headingGraph2";
                     if (fragmentIsNew(tag)) {
@@ -61,50 +57,47 @@ public class ShareActivity extends ThemeMenuActivity {
                         addFragment(heading, tag);
                     }
                     tag = "graphView2";
-                    if (fragmentIsNew(tag)) {
-                        final String key = tag + "_data";
-                        final TimeGraphFragment tgf = TimeGraphFragment.newInstance(key);
-                        Runnable r = new Runnable() {
-                            @Override
-                            public void run() {
-                                GraphData gD = c.createMessagesPerDayGraph();
-                                ds.putData(key, gD);
-                            }
-                        };
-                        ds.putRunnable(key, r);
-                        ds.runRunnableInThread(key);
-                        addFragment(tgf, tag);
-                    }
+                    final String perDayKey = tag + "_data";
+                    putGraphRunnable(perDayKey, new Runnable() {
+                        @Override
+                        public void run() {
+                            ds.putData(perDayKey, c.createMessagesPerDayGraph(), c);
+                        }
+                    });
+                    if (fragmentIsNew(tag)) addFragment(TimeGraphFragment.newInstance(perDayKey), tag);
                     tag = "buttonOpenSenderList";
-                    if (fragmentIsNew(tag)) {
-                        String key = "showSenderListActivity";
-                        Runnable r = new Runnable() {
-                            @Override
-                            public void run() {
-                                Intent intent = new Intent(thisActivity, SenderListActivity.class);
-                                startActivity(intent);
-                            }
-                        };
-                        ds.putRunnable(key, r);
-                        addFragment(ButtonFragment.newInstance(getString(R.string.show_sender_list), key), tag);
-                    }
+                    String key = "showSenderListActivity";
+                    ds.putRunnable(key, new Runnable() {
+                        @Override
+                        public void run() {
+                            Intent intent = new Intent(thisActivity, SenderListActivity.class);
+                            startActivity(intent);
+                        }
+                    });
+                    if (fragmentIsNew(tag)) addFragment(ButtonFragment.newInstance(getString(R.string.show_sender_list), key), tag);
                     tag = "buttonOpenMessages";
-                    if (fragmentIsNew(tag)) {
-                        String key = "showMessagesActivity";
-                        Runnable r = new Runnable() {
-                            @Override
-                            public void run() {
-                                Intent intent = new Intent(thisActivity, MessagesActivity.class);
-                                startActivity(intent);
-                            }
-                        };
-                        ds.putRunnable(key, r);
-                        addFragment(ButtonFragment.newInstance(getString(R.string.show_messages), key), tag);
-                    }
+                    key = "showMessagesActivity";
+                    ds.putRunnable(key, new Runnable() {
+                        @Override
+                        public void run() {
+                            Intent intent = new Intent(thisActivity, MessagesActivity.class);
+                            startActivity(intent);
+                        }
+                    });
+                    if (fragmentIsNew(tag)) addFragment(ButtonFragment.newInstance(getString(R.string.show_messages), key), tag);
                     transaction.commit();
                 }
             }
 
+            /**
+             * Registers r, which computes a graph of the current chat, and runs it unless the graph
+             * is cached already. The runnables of the previous chat are dropped by setChat.
+             */
+            private void putGraphRunnable(String key, Runnable r) {
+                ds.putRunnable(key, r);
+                if (!ds.isCached(key)) ds.runRunnableInBackground(key, TaskScheduler.PRIORITY_PREFETCH);
+            }
+
             private boolean fragmentIsNew(String tag) {
                 return getSupportFragmentManager().findFragmentByTag(tag) == null;
             }
@@ -132,16 +125,41 @@ public class ShareActivity extends ThemeMenuActivity {
                             break;
                         case DONE:
                             findViewById(R.id.progressBarLoading).setVisibility(View.GONE);
+                            findViewById(R.id.textViewLoadingProgress).setVisibility(View.GONE);
                             textView.setVisibility(View.GONE);
                             break;
                         case ERROR:
                             findViewById(R.id.progressBarLoading).setVisibility(View.GONE);
+                            findViewById(R.id.textViewLoadingProgress).setVisibility(View.GONE);
                             textView.setText(R.string.error_loading);
                             break;
                     }
                 }
             }
         };
+        final Observer<LoadingProgress> loadingProgressObserver = new Observer<LoadingProgress>() {
+            @Override
+            public void onChanged(@Nullable LoadingProgress progress) {
+                ProgressBar progressBar = findViewById(R.id.progressBarLoading);
+                TextView textView = findViewById(R.id.textViewLoadingProgress);
+                LoadingStage stage = ds.loadingStage.getValue();
+                if (progress == null || stage == LoadingStage.DONE || stage == ERROR) {
+                    progressBar.setIndeterminate(true);
+                    textView.setVisibility(View.GONE);
+                    return;
+                }
+                progressBar.setIndeterminate(false);
+                progressBar.setMax(1000);
+                progressBar.setProgress((int) (progress.getFraction() * 1000));
+                String bytes = Formatter.formatShortFileSize(thisActivity, progress.bytes);
+                String total = Formatter.formatShortFileSize(thisActivity, progress.totalBytes);
+                String throughput = Formatter.formatShortFileSize(thisActivity, progress.getBytesPerSecond());
+                long eta = progress.getEtaMillis();
+                textView.setText(eta < 0 ? getString(R.string.loading_progress, bytes, total, progress.messages, throughput)
+                        : getString(R.string.loading_progress_eta, bytes, total, progress.messages, throughput, SenderListActivity.formatDuration(eta)));
+                textView.setVisibility(View.VISIBLE);
+            }
+        };
         Intent intent = getIntent();
         if (savedInstanceState == null) {
 
@@ -171,7 +189,7 @@ public class ShareActivity extends ThemeMenuActivity {
                 }
                 //start loading the text file in a new Thread
                 else {
-                    ChatLoadingThread clt = new ChatLoadingThread(getContentResolver(), uri, ds);
+                    ChatLoadingThread clt = new ChatLoadingThread(getApplicationContext(), uri, ds);
                     clt.start();
                 }
 
@@ -182,8 +200,10 @@ public class ShareActivity extends ThemeMenuActivity {
             //load data from Chat
             chatObserver.onChanged(ds.chat.getValue());
             loadingStageObserver.onChanged(ds.loadingStage.getValue());
+            loadingProgressObserver.onChanged(ds.loadingProgress.getValue());
         }
         ds.chat.observe(this, chatObserver);
         ds.loadingStage.observe(this, loadingStageObserver);
+        ds.loadingProgress.observe(this, loadingProgressObserver);
     }
 }
@@ -0,0 +1,114 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs background work such as graph computation and rendering on a bounded pool of worker
+ * threads. Tasks have a key and a priority: a task for a key that is already queued or running is
+ * not started again, and queued tasks run in order of priority, then in order of submission.
+ */
+class TaskScheduler {
+    static final int PRIORITY_VISIBLE = 0, PRIORITY_PREFETCH = 1;  //lower values run first
+
+    //leave one core to the UI thread
+    private static final TaskScheduler instance = new TaskScheduler(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
+    private final ThreadPoolExecutor executor;
+    private final HashMap<String, Task> tasks = new HashMap<>();  //queued or running tasks by key
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    private TaskScheduler(int threads) {
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread t = new Thread(r, "TaskScheduler-" + count.incrementAndGet());
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            }
+        });
+    }
+
+    static TaskScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Queues r, unless a task with the same key is already queued or running. In that case the
+     * queued task gets the higher of both priorities.
+     *
+     * @return the future of the task for key
+     */
+    synchronized Future<?> submit(@NonNull String key, int priority, @NonNull Runnable r) {
+        Task task = tasks.get(key);
+        if (task != null) {
+            if (priority < task.priority && executor.getQueue().remove(task)) {
+                task.priority = priority;
+                executor.getQueue().offer(task);
+            }
+            return task;
+        }
+        task = new Task(key, priority, r);
+        tasks.put(key, task);
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Removes the task for key from the queue, or interrupts it if it is running
+     */
+    synchronized void cancel(@NonNull String key) {
+        Task task = tasks.remove(key);
+        if (task == null) return;
+        task.cancel(true);
+        executor.remove(task);
+    }
+
+    private synchronized void finished(Task task) {
+        if (tasks.get(task.key) == task) tasks.remove(task.key);
+    }
+
+    private class Task extends FutureTask<Void> implements Comparable<Task> {
+        final String key;
+        final int order;
+        volatile int priority;
+
+        Task(String key, int priority, Runnable r) {
+            super(r, null);
+            this.key = key;
+            this.priority = priority;
+            order = sequence.getAndIncrement();
+        }
+
+        @Override
+        protected void done() {
+            finished(this);
+            if (isCancelled()) return;
+            try {
+                get();
+            } catch (ExecutionException | InterruptedException e) {
+                Log.e("TaskScheduler", "task " + key + " failed", e);
+            }
+        }
+
+        @Override
+        public int compareTo(@NonNull Task other) {
+            if (priority != other.priority) return Integer.compare(priority, other.priority);
+            return Integer.compare(order, other.order);
+        }
+    }
+}
@@ -41,6 +41,20 @@ public class TimeGraphFragment extends Fragment {
         }
     }
 
+    @Override
+    public void onStart() {
+        super.onStart();
+        //the graph is shown now: getData computes it first, or again if it was cancelled or evicted
+        if (graphDataKey != null) DataStorage.getInstance().getData(graphDataKey);
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        DataStorage ds = DataStorage.getInstance();
+        if (graphDataKey != null && !ds.isCached(graphDataKey)) ds.cancelRunnable(graphDataKey);
+    }
+
     void initGraphView() {
         View view = getView();
         if (view == null) return;
@@ -0,0 +1,79 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * A synthetic chat, loaded once per trial, and the queries the lookup benchmarks run against it
+ */
+@State(Scope.Benchmark)
+public class ChatState {
+    static final int QUERIES = 1024;
+    //size of the graph view the hit tests are measured in
+    static final float WIDTH = 1080, HEIGHT = 720;
+
+    @Param({"10000", "1000000", "10000000"})
+    public int messages;
+
+    ByteBuffer data;
+    ChatFormat format;
+    Chat chat;
+    long[] queryTimes;
+    String[] queryNames;
+    ByteBuffer nameData;  //the names of queryNames, one after the other
+    int[] nameStarts;
+    SenderTable internTable;  //holds the names of the chat, but isn't used by it
+    GraphData perDayGraph;
+    GraphHitTester totalHitTester, perDayHitTester;
+    float[] queryX, queryY;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        data = SyntheticChat.generate(messages, 42);
+        format = ChatFormatDetector.detect(data, null);
+        chat = new Chat();
+        chat.init(data, format, null);
+        Random random = new Random(7);
+        MessageStore store = chat.getMessages();
+        long first = store.getTime(0), last = store.getTime(store.size() - 1);
+        queryTimes = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) queryTimes[i] = first + (long) (random.nextDouble() * (last - first));
+        queryNames = new String[QUERIES];
+        nameStarts = new int[QUERIES + 1];
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < QUERIES; i++) {
+            //one in eight isn't a sender of the chat
+            queryNames[i] = random.nextInt(8) == 0 ? "Unknown " + i : SyntheticChat.NAMES[random.nextInt(SyntheticChat.NAMES.length)];
+            names.append(queryNames[i]);
+        }
+        byte[] nameBytes = names.toString().getBytes(StandardCharsets.UTF_8);
+        for (int i = 0, pos = 0; i < QUERIES; i++) {
+            nameStarts[i] = pos;
+            pos += queryNames[i].getBytes(StandardCharsets.UTF_8).length;
+            nameStarts[i + 1] = pos;
+        }
+        nameData = ByteBuffer.wrap(nameBytes);
+        internTable = new SenderTable();
+        for (String name : SyntheticChat.NAMES) {
+            byte[] b = name.getBytes(StandardCharsets.UTF_8);
+            internTable.intern(ByteBuffer.wrap(b), 0, b.length);
+        }
+        //the same screen mapping as GraphView, with the graphs scaled to [0, 1]
+        totalHitTester = new GraphHitTester(chat.createTotalMessagesGraph(), 0, WIDTH, HEIGHT, 0);
+        perDayGraph = chat.createMessagesPerDayGraph();
+        perDayHitTester = new GraphHitTester(perDayGraph, 0, WIDTH, HEIGHT, 0);
+        queryX = new float[QUERIES];
+        queryY = new float[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queryX[i] = random.nextFloat() * WIDTH;
+            queryY[i] = random.nextFloat() * HEIGHT;
+        }
+    }
+}
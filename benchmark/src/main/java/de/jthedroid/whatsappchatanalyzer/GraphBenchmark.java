@@ -0,0 +1,49 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the graphs of the start and sender screens from a loaded chat
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class GraphBenchmark {
+    private int frame = 0;
+
+    @Benchmark
+    public GraphData totalMessagesGraph(ChatState state) {
+        return state.chat.createTotalMessagesGraph();
+    }
+
+    @Benchmark
+    public GraphData senderTotalMessagesGraph(ChatState state) {
+        Chat chat = state.chat;
+        return chat.createTotalMessagesGraph(chat.getSortedSenders().get(0));
+    }
+
+    @Benchmark
+    public GraphData messagesPerDayGraph(ChatState state) {
+        return state.chat.createMessagesPerDayGraph();
+    }
+
+    /**
+     * Downsamples the messages per day graph to the width of a phone screen, as GraphView does for
+     * every render
+     */
+    @Benchmark
+    public GraphData downsamplePerDayGraph(ChatState state) {
+        //the result for the last width is cached, so alternate between two
+        return state.perDayGraph.downsample((int) ChatState.WIDTH - (frame++ & 1));
+    }
+}
@@ -0,0 +1,78 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups done while the user interacts with a loaded chat, each measured over
+ * {@link ChatState#QUERIES} random queries
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@OperationsPerInvocation(ChatState.QUERIES)
+public class LookupBenchmark {
+
+    /**
+     * Finds senders by name, as the sender screens do
+     */
+    @Benchmark
+    public int senderFind(ChatState state) {
+        SenderTable senders = state.chat.getSenderTable();
+        int sum = 0;
+        for (String name : state.queryNames) sum += senders.find(name);
+        return sum;
+    }
+
+    /**
+     * Interns sender names from bytes, as the parser does for every message. Unknown names are
+     * added on the first invocation and found afterwards.
+     */
+    @Benchmark
+    public int senderIntern(ChatState state) {
+        SenderTable senders = state.internTable;
+        int sum = 0;
+        for (int i = 0; i < ChatState.QUERIES; i++) sum += senders.intern(state.nameData, state.nameStarts[i], state.nameStarts[i + 1]);
+        return sum;
+    }
+
+    @Benchmark
+    public int getIndexForDate(ChatState state) {
+        Chat chat = state.chat;
+        int sum = 0;
+        for (long time : state.queryTimes) sum += chat.getIndexForDate(time);
+        return sum;
+    }
+
+    /**
+     * Finds the point of the cumulative messages graph nearest to a touch
+     */
+    @Benchmark
+    public int findNearestIndex(ChatState state) {
+        GraphHitTester tester = state.totalHitTester;
+        int sum = 0;
+        for (int i = 0; i < ChatState.QUERIES; i++) sum += tester.findNearest(state.queryX[i], state.queryY[i]);
+        return sum;
+    }
+
+    /**
+     * Finds the bar of the messages per day graph nearest to a touch
+     */
+    @Benchmark
+    public int findNearestBar(ChatState state) {
+        GraphHitTester tester = state.perDayHitTester;
+        int sum = 0;
+        for (int i = 0; i < ChatState.QUERIES; i++) sum += tester.findNearest(state.queryX[i], state.queryY[i]);
+        return sum;
+    }
+}
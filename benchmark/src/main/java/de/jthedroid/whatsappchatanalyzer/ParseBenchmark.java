@@ -0,0 +1,72 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.text.ParsePosition;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a chat: scanning for headers, and the whole parse including building the messages and
+ * the statistics
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ParseBenchmark {
+    private static final int WINDOW = 1000;
+
+    /**
+     * Parses the timestamp at the start of every line, without building messages
+     */
+    @Benchmark
+    public long headerScan(ChatState state) {
+        TimestampParser parser = new TimestampParser(state.format);
+        ByteBuffer data = state.data;
+        ParsePosition pp = new ParsePosition(0);
+        long sum = 0;
+        int end = data.limit();
+        for (int lineStart = 0; lineStart < end; ) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && data.get(lineEnd) != '\n') lineEnd++;
+            pp.setIndex(lineStart);
+            long t = parser.parse(data, pp);
+            if (pp.getErrorIndex() == -1) sum += t;
+            lineStart = lineEnd + 1;
+        }
+        return sum;
+    }
+
+    /**
+     * Parses the export on all cores and builds messages, senders, aggregates and the time index
+     */
+    @Benchmark
+    public int loadChat(ChatState state) throws InterruptedException {
+        Chat chat = new Chat();
+        chat.init(state.data, state.format, null);
+        return chat.getMsgCount();
+    }
+
+    /**
+     * Assembles the messages of a page of the message list, as it is scrolled through
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(WINDOW)
+    public void buildMessages(ChatState state, Blackhole blackhole) {
+        Chat chat = state.chat;
+        int start = (chat.getMsgCount() - WINDOW) / 2;
+        for (int i = start; i < start + WINDOW; i++) blackhole.consume(chat.getMessage(i));
+    }
+}
@@ -0,0 +1,94 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates chat exports in the "dd.MM.yy, HH:mm - Name: text" format. Messages mostly follow each
+ * other within a minute, with a pause of up to half an hour now and then. Some are system
+ * messages, media placeholders or span several lines, and a few senders write most of the messages.
+ */
+final class SyntheticChat {
+    static final String[] NAMES = {"Alice", "Bob", "Carl", "Dörte", "Eve", "Frank", "Gül", "Heinz", "Ida",
+            "Jürgen", "Kim", "Lena", "Mo 🎸", "Nina", "Otto", "Paula", "Quentin", "Rosa", "Søren", "+49 170 1234567"};
+    private static final String[] WORDS = {"hi", "hello", "ok", "yes", "no", "what?", "see", "you", "tomorrow",
+            "haha", "😂", "👍", "lol", "die", "straße", "ist", "gesperrt", "time: 8", "dinner", "now", "later"};
+    private static final String MEDIA = "<Media omitted>";
+
+    private byte[] bytes;
+    private int length = 0;
+
+    private SyntheticChat(int capacity) {
+        bytes = new byte[capacity];
+    }
+
+    /**
+     * @return an export of the given number of messages; the same seed gives the same export
+     */
+    static ByteBuffer generate(int messages, long seed) {
+        Random random = new Random(seed);
+        byte[][] names = encode(NAMES), words = encode(WORDS);
+        byte[] media = MEDIA.getBytes(StandardCharsets.UTF_8);
+        SyntheticChat chat = new SyntheticChat((int) Math.min(Integer.MAX_VALUE - 8, messages * 48L + 1024));
+        //a day after the 12th, so the format detector can tell days from months in the first hours
+        LocalDateTime time = LocalDateTime.of(2015, 1, 13, 8, 0);
+        for (int i = 0; i < messages; i++) {
+            //about 90 s per message on average, so 10 million messages end within 30 years and the
+            //two-digit years don't wrap around
+            time = time.plusSeconds(random.nextInt(20) == 0 ? 300 + random.nextInt(1800) : random.nextInt(60));
+            chat.appendTwoDigits(time.getDayOfMonth()).append('.').appendTwoDigits(time.getMonthValue()).append('.')
+                    .appendTwoDigits(time.getYear() % 100).append(',').append(' ')
+                    .appendTwoDigits(time.getHour()).append(':').appendTwoDigits(time.getMinute())
+                    .append(' ').append('-').append(' ');
+            if (random.nextInt(100) == 0) {
+                chat.append(names[0]).append(" changed the group description".getBytes(StandardCharsets.UTF_8)).append('\n');
+                continue;
+            }
+            //a few senders write most messages
+            int sender = Math.min(random.nextInt(names.length), random.nextInt(names.length));
+            chat.append(names[sender]).append(':').append(' ');
+            if (random.nextInt(30) == 0) {
+                chat.append(media).append('\n');
+                continue;
+            }
+            int count = 1 + random.nextInt(8);
+            for (int w = 0; w < count; w++) {
+                //skewed towards the first words, like natural language
+                chat.append(words[Math.min(random.nextInt(words.length), random.nextInt(words.length))]);
+                chat.append(w + 1 < count && random.nextInt(25) == 0 ? '\n' : ' ');
+            }
+            chat.append('\n');
+        }
+        return ByteBuffer.wrap(chat.bytes, 0, chat.length).slice();
+    }
+
+    private static byte[][] encode(String[] strings) {
+        byte[][] result = new byte[strings.length][];
+        for (int i = 0; i < strings.length; i++) result[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+        return result;
+    }
+
+    private void ensureCapacity(int n) {
+        if (length + n > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(length + n, (int) Math.min(Integer.MAX_VALUE - 8, bytes.length * 3L / 2)));
+    }
+
+    private SyntheticChat append(char c) {
+        ensureCapacity(1);
+        bytes[length++] = (byte) c;
+        return this;
+    }
+
+    private SyntheticChat append(byte[] b) {
+        ensureCapacity(b.length);
+        System.arraycopy(b, 0, bytes, length, b.length);
+        length += b.length;
+        return this;
+    }
+
+    private SyntheticChat appendTwoDigits(int n) {
+        return append((char) ('0' + n / 10)).append((char) ('0' + n % 10));
+    }
+}
@@ -0,0 +1,216 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Message counts per sender and local calendar day. The cube is filled in one pass over the messages
+ * while the chat is loaded, so graphs can be built in time proportional to the number of buckets
+ * instead of the number of messages.
+ * <p>
+ * Row {@link #ALL} holds the counts of all messages, including system messages; sender id s uses
+ * row s + 1.
+ * <p>
+ * The day buckets are a dense array of at most {@link #MAX_DENSE_DAYS} days. Days outside of it,
+ * like the ones of a misparsed timestamp far from the rest of the chat, are counted in a sparse
+ * map instead, so a single outlier can't make the array grow to (senders + 1) times its distance.
+ */
+class AggregationCube {
+    static final int ALL = -1;
+    private static final long DAY = 24 * 60 * 60 * 1000;
+    private static final long HOUR = 60 * 60 * 1000;
+    static final int MAX_DENSE_DAYS = 32 * 366;
+
+    private final TimeZone timeZone;
+    private int rows = 0;
+    private long firstDay = 0;  //in days since 1970-01-01, local time
+    private int days = 0;
+    private int[] dayCounts = new int[0];  //dayCounts[row * days + day]
+    private final TreeMap<Long, int[]> overflow = new TreeMap<>();  //counts per row of the days outside the dense range
+    private long[] overflowDays = new long[0];  //the keys of overflow, ascending
+    private int overflowBefore = 0;  //number of overflow days before firstDay
+    private boolean overflowChanged = false;
+
+    AggregationCube(@NonNull TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * Adds the messages [from, to) of messages
+     */
+    void add(@NonNull MessageStore messages, int from, int to, int senderCount) {
+        ensureRows(senderCount + 1);
+        for (int i = from; i < to; i++) count(messages, i, 1);
+        indexOverflow();
+    }
+
+    /**
+     * Removes message i, which must have been added before
+     */
+    void remove(@NonNull MessageStore messages, int i) {
+        count(messages, i, -1);
+        indexOverflow();
+    }
+
+    private void count(MessageStore messages, int i, int delta) {
+        long local = messages.getTime(i) + timeZone.getOffset(messages.getTime(i));
+        long day = Math.floorDiv(local, DAY);
+        int row = messages.getSenderId(i) + 1;
+        if (ensureDay(day)) {
+            int d = (int) (day - firstDay);
+            dayCounts[d] += delta;
+            if (row > 0) dayCounts[row * days + d] += delta;
+        } else {
+            int[] counts = overflow.get(day);
+            if (counts == null) {
+                overflow.put(day, counts = new int[rows]);
+                overflowChanged = true;
+            }
+            counts[0] += delta;
+            if (row > 0) counts[row] += delta;
+        }
+    }
+
+    private void ensureRows(int count) {
+        if (count <= rows) return;
+        dayCounts = Arrays.copyOf(dayCounts, count * days);
+        for (Map.Entry<Long, int[]> e : overflow.entrySet()) e.setValue(Arrays.copyOf(e.getValue(), count));
+        rows = count;
+    }
+
+    /**
+     * Grows the dense day range to include day, by at least half of the current range to keep the
+     * amortized cost low. Messages are mostly chronological, so this rarely copies.
+     *
+     * @return false if the range would grow beyond {@link #MAX_DENSE_DAYS}, then it isn't changed
+     */
+    private boolean ensureDay(long day) {
+        if (days > 0 && day >= firstDay && day < firstDay + days) return true;
+        long newFirst, newEnd;
+        if (days == 0) {
+            newFirst = day;
+            newEnd = day + 1;
+        } else {
+            long needed = Math.max(firstDay + days, day + 1) - Math.min(firstDay, day);
+            if (needed > MAX_DENSE_DAYS) return false;
+            int grow = Math.max(days / 2, 16);
+            newFirst = day < firstDay ? Math.max(Math.min(day, firstDay - grow), firstDay + days - MAX_DENSE_DAYS) : firstDay;
+            newEnd = day >= firstDay + days ? Math.min(Math.max(day + 1, firstDay + days + grow), newFirst + MAX_DENSE_DAYS) : firstDay + days;
+        }
+        int newDays = (int) (newEnd - newFirst), shift = (int) (firstDay - newFirst);
+        int[] counts = new int[rows * newDays];
+        for (int row = 0; row < rows && days > 0; row++) {
+            System.arraycopy(dayCounts, row * days, counts, row * newDays + shift, days);
+        }
+        dayCounts = counts;
+        firstDay = newFirst;
+        days = newDays;
+        //days that didn't fit before may be in the range now
+        Iterator<Map.Entry<Long, int[]>> it = overflow.subMap(newFirst, newEnd).entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, int[]> e = it.next();
+            int d = (int) (e.getKey() - firstDay);
+            int[] rowCounts = e.getValue();
+            for (int row = 0; row < rows; row++) dayCounts[row * days + d] += rowCounts[row];
+            it.remove();
+            overflowChanged = true;
+        }
+        return true;
+    }
+
+    /**
+     * Lists the overflow days in order, so buckets can be looked up by index
+     */
+    private void indexOverflow() {
+        if (!overflowChanged) return;
+        overflowDays = new long[overflow.size()];
+        overflowBefore = 0;
+        int k = 0;
+        for (long day : overflow.keySet()) {
+            overflowDays[k++] = day;
+            if (day < firstDay) overflowBefore++;
+        }
+        overflowChanged = false;
+    }
+
+    @NonNull
+    TimeZone getTimeZone() {
+        return timeZone;
+    }
+
+    void write(@NonNull DataOutput out) throws IOException {
+        out.writeInt(rows);
+        out.writeLong(firstDay);
+        out.writeInt(days);
+        for (int c : dayCounts) out.writeInt(c);
+        out.writeInt(overflow.size());
+        for (Map.Entry<Long, int[]> e : overflow.entrySet()) {
+            out.writeLong(e.getKey());
+            for (int row = 0; row < rows; row++) out.writeInt(row < e.getValue().length ? e.getValue()[row] : 0);
+        }
+    }
+
+    /**
+     * Replaces the content of this cube with one written by {@link #write(DataOutput)} for the same
+     * time zone, so messages can be added to it again
+     */
+    void read(@NonNull DataInput in) throws IOException {
+        rows = in.readInt();
+        firstDay = in.readLong();
+        days = in.readInt();
+        if (rows < 0 || days < 0 || days > MAX_DENSE_DAYS) throw new IOException("invalid cube size");
+        dayCounts = readInts(in, rows * days);
+        overflow.clear();
+        for (int k = in.readInt(); k > 0; k--) overflow.put(in.readLong(), readInts(in, rows));
+        overflowChanged = true;
+        indexOverflow();
+    }
+
+    private static int[] readInts(DataInput in, int n) throws IOException {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) a[i] = in.readInt();
+        return a;
+    }
+
+    /**
+     * @return the number of day buckets, in chronological order; some buckets may be empty
+     */
+    int getDayCount() {
+        return overflowDays.length + days;
+    }
+
+    /**
+     * @return the day of bucket d, in days since 1970-01-01
+     */
+    private long getDay(int d) {
+        if (d < overflowBefore) return overflowDays[d];
+        if (d < overflowBefore + days) return firstDay + d - overflowBefore;
+        return overflowDays[d - days];
+    }
+
+    /**
+     * @return the time of noon (local time) of day bucket d
+     */
+    long getDayTime(int d) {
+        long local = getDay(d) * DAY + 12 * HOUR;
+        return local - timeZone.getOffset(local - timeZone.getRawOffset());
+    }
+
+    /**
+     * @param senderId a sender id or {@link #ALL}
+     */
+    int getDayCount(int senderId, int d) {
+        int dense = d - overflowBefore;
+        if (dense >= 0 && dense < days) return dayCounts[(senderId + 1) * days + dense];
+        int[] counts = overflow.get(getDay(d));
+        return senderId + 1 < counts.length ? counts[senderId + 1] : 0;
+    }
+}
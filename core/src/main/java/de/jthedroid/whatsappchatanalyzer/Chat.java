@@ -0,0 +1,310 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static de.jthedroid.whatsappchatanalyzer.LoadingStage.PROCESSING;
+
+class Chat {
+    //the shortest time ranges worth zooming in to, some steps of the graphs' resolution
+    private static final long MIN_TOTAL_SPAN = 10 * 60 * 1000, MIN_PER_DAY_SPAN = 7 * 24 * 60 * 60 * 1000;
+    private final SenderTable senderTable = new SenderTable();
+    private final ArrayList<Sender> senders = new ArrayList<>();
+    private MessageStore messages;
+    private TimeIndex timeIndex;
+    private AggregationCube cube = new AggregationCube(TimeZone.getDefault());
+    private ConversationStats conversationStats = new ConversationStats();
+    private int aggregated = 0;  //number of messages added to the cube and the conversation stats
+    private ArrayList<Sender> sortedSenders;
+    private boolean valid = true;
+    private SearchIndex searchIndex;
+    private final TokenStats tokenStats = new TokenStats();
+    private int uncounted = 0;  //messages from 0 to uncounted aren't in tokenStats yet
+    private LoadingListener listener;
+
+    /**
+     * @param listener is told about the loading progress, or null
+     */
+    void init(ByteBuffer data, ChatFormat format, @Nullable LoadingListener listener) throws InterruptedException {
+        init(data, format, Runtime.getRuntime().availableProcessors(), listener);
+    }
+
+    /**
+     * @param parallelism the number of threads parsing the export
+     */
+    void init(ByteBuffer data, ChatFormat format, int parallelism, @Nullable LoadingListener listener) throws InterruptedException {
+        this.listener = listener;
+        //sized for the whole export up front, so the columns aren't copied on every chunk;
+        //finishLoading trims them to the actual number of messages
+        messages = new MessageStore(data, data.limit() / ChatParser.AVERAGE_MESSAGE_SIZE);
+        ChatParser parser = new ChatParser(new TimestampParser(format), parallelism, listener);
+        parser.parse(data, this);
+        finishLoading();
+    }
+
+    /**
+     * Initializes the chat with messages and aggregates restored from a snapshot, which are used as
+     * they are instead of being computed again
+     *
+     * @param senders the senders the ids in messages refer to
+     */
+    void init(MessageStore messages, SenderTable senders, AggregationCube cube, ConversationStats stats,
+              TimeIndex timeIndex, @Nullable LoadingListener listener) {
+        this.listener = listener;
+        this.messages = messages;
+        this.cube = cube;
+        this.conversationStats = stats;
+        this.timeIndex = timeIndex;
+        aggregated = messages.size();
+        uncounted = messages.size();  //counted on the first call of getTokenStats
+        senderTable.merge(senders);  //the table is empty, so the ids stay the same
+        for (int i = 0; i < messages.size(); i++) {
+            int id = messages.getSenderId(i);
+            if (id != MessageStore.NO_SENDER) senderTable.addMessage(id, i);
+        }
+        finishLoading();
+    }
+
+    /**
+     * Extends the chat by the messages that were appended to its export. data must start with the
+     * export the chat was loaded from and already be the text arena of its messages. The last
+     * message is parsed again, as its text may continue in data.
+     */
+    void extend(ByteBuffer data, ChatFormat format) throws InterruptedException {
+        int last = messages.size() - 1;
+        int start = messages.getTextStart(last);
+        while (start > 0 && data.get(start - 1) != '\n') start--;
+        int senderId = messages.getSenderId(last);
+        if (senderId != MessageStore.NO_SENDER) senderTable.removeLastMessage(senderId);
+        cube.remove(messages, last);
+        conversationStats.remove(messages, last);
+        aggregated = last;
+        synchronized (this) {
+            if (last < uncounted) uncounted = last;
+            else tokenStats.remove(messages, last);
+        }
+        messages.truncate(last);
+        ChatParser parser = new ChatParser(new TimestampParser(format), Runtime.getRuntime().availableProcessors(), listener);
+        if (start == 0) parser.parse(data, this);
+        else parser.parse(data, start, this);
+        PerfLog.Span span = PerfLog.begin("chat.timeIndex");
+        span.count = messages.size() - last;
+        timeIndex = timeIndex.extend(last);
+        span.end();
+        finishLoading();
+    }
+
+    private void finishLoading() {
+        messages.trimToSize();
+        if (messages.size() == 0) {
+            valid = false;
+            return;
+        }
+        for (int id = senders.size(); id < senderTable.size(); id++) senders.add(new Sender(senderTable, id));
+        PerfLog.Span span;
+        if (aggregated < messages.size()) {
+            span = PerfLog.begin("chat.aggregate");
+            span.count = messages.size() - aggregated;
+            cube.add(messages, aggregated, messages.size(), senderTable.size());
+            conversationStats.add(messages, aggregated, messages.size(), senderTable.size());
+            aggregated = messages.size();
+            span.end();
+        }
+        if (timeIndex == null) {
+            span = PerfLog.begin("chat.timeIndex");
+            span.count = messages.size();
+            timeIndex = new TimeIndex(messages);
+            span.end();
+        }
+        span = PerfLog.begin("chat.senderSort");
+        span.count = senderTable.size();
+        sortedSenders = createSortedSenderList();
+        span.end();
+        if (sortedSenders.isEmpty()) {
+            valid = false;
+        }
+    }
+
+    /**
+     * Appends the messages of the next chunk. Senders are created in order of their first message,
+     * so the result doesn't depend on how the input was split into chunks.
+     */
+    void addChunk(ChatParser.ChunkResult chunk) {
+        MessageStore chunkMessages = chunk.messages;
+        if (listener != null && messages.size() == 0 && chunkMessages.size() > 0) listener.onLoadingStage(PROCESSING);
+        int offset = messages.size();
+        int[] senderIdMap = senderTable.merge(chunk.senders);
+        for (int i = 0; i < chunkMessages.size(); i++) {
+            int id = chunkMessages.getSenderId(i);
+            if (id != MessageStore.NO_SENDER) senderTable.addMessage(senderIdMap[id], offset + i);
+        }
+        messages.append(chunkMessages, senderIdMap);
+        synchronized (this) {
+            tokenStats.merge(chunk.tokens, senderIdMap);
+        }
+    }
+
+    private ArrayList<Sender> createSortedSenderList() {
+        ArrayList<Sender> sorted = new ArrayList<>(senders.size());
+        for (int id : senderTable.getIdsByMsgCount()) sorted.add(senders.get(id));
+        return sorted;
+    }
+
+    GraphData createTotalMessagesGraph() {
+        return createCumulativeGraph(AggregationCube.ALL);
+    }
+
+    GraphData createTotalMessagesGraph(Sender sender) {
+        return createCumulativeGraph(sender.getId());
+    }
+
+    /**
+     * @return the number of messages up to each message of the sender, or of all messages for
+     * {@link AggregationCube#ALL}. Unlike the other graphs this one isn't built from the cube, as
+     * every message is a step of the line. Times are relative to the first message, as floats
+     * can't tell minutes apart in milliseconds since 1970.
+     */
+    private GraphData createCumulativeGraph(int senderId) {
+        int count = senderId == AggregationCube.ALL ? messages.size() : senderTable.getMsgCount(senderId);
+        if (count == 0) return null;
+        PerfLog.Span span = PerfLog.begin("graph.total");
+        span.count = count;
+        float[] xData = new float[count], yData = new float[count];
+        long origin = messages.getTime(0);
+        for (int i = 0; i < count; i++) {
+            int index = senderId == AggregationCube.ALL ? i : senderTable.getMessageIndex(senderId, i);
+            xData[i] = messages.getTime(index) - origin;  //timecode
+            yData[i] = i + 1;  //total messages at this point
+        }
+        GraphData gD = new GraphData(xData, yData, LabelFormatter.dateTime(origin), LabelFormatter.count(), GraphType.DEFAULT, GraphMode.LAST);
+        gD.setMinXSpan(MIN_TOTAL_SPAN);
+        gD.scale();
+        gD.buildPyramid();
+        span.end();
+        return gD;
+    }
+
+    GraphData createMessagesPerDayGraph() {
+        int days = 0;
+        for (int d = 0; d < cube.getDayCount(); d++) if (cube.getDayCount(AggregationCube.ALL, d) > 0) days++;
+        if (days == 0) return null;
+        PerfLog.Span span = PerfLog.begin("graph.perDay");
+        span.count = days;
+        float[] xData = new float[days], yData = new float[days];
+        long origin = -1;
+        for (int d = 0, i = 0; d < cube.getDayCount(); d++) {
+            int messageCount = cube.getDayCount(AggregationCube.ALL, d);
+            if (messageCount == 0) continue;
+            if (i == 0) origin = cube.getDayTime(d);
+            xData[i] = cube.getDayTime(d) - origin;  //timecode
+            yData[i] = messageCount; //messages per day
+            i++;
+        }
+        GraphData gD = new GraphData(xData, yData, LabelFormatter.date(origin), LabelFormatter.count(), GraphType.BARGRAPH);
+        gD.setMinXSpan(MIN_PER_DAY_SPAN);
+        gD.scale();
+        gD.buildPyramid();
+        span.end();
+        return gD;
+    }
+
+    /**
+     * @return the sender with the given name, or null if there is none
+     */
+    Sender getSender(String name) {
+        int id = senderTable.find(name);
+        return id == MessageStore.NO_SENDER ? null : senders.get(id);
+    }
+
+    Sender getSender(int id) {
+        return senders.get(id);
+    }
+
+    ArrayList<Sender> getSortedSenders() {
+        return sortedSenders;
+    }
+
+    int getMaxMsgCount() {
+        return sortedSenders.get(0).getMsgCount();
+    }
+
+    int getMsgCount() {
+        return messages.size();
+    }
+
+    int getIndexForDate(long time) {
+        return timeIndex.findNearest(time);
+    }
+
+    MessageStore getMessages() {
+        return messages;
+    }
+
+    SenderTable getSenderTable() {
+        return senderTable;
+    }
+
+    AggregationCube getCube() {
+        return cube;
+    }
+
+    TimeIndex getTimeIndex() {
+        return timeIndex;
+    }
+
+    /**
+     * @return a new {@link Message} for the message at index i, with its text decoded
+     */
+    Message getMessage(int i) {
+        int senderId = messages.getSenderId(i);
+        Sender sender = senderId == MessageStore.NO_SENDER ? null : senders.get(senderId);
+        return new Message(messages.getTime(i), messages.getText(i), sender);
+    }
+
+    /**
+     * @return reply times, turns and sessions of the senders
+     */
+    @NonNull
+    ConversationStats getConversationStats() {
+        return conversationStats;
+    }
+
+    /**
+     * @return the full-text index of the messages, built on the first call
+     */
+    synchronized SearchIndex getSearchIndex() {
+        if (searchIndex == null) searchIndex = new SearchIndex(messages);
+        return searchIndex;
+    }
+
+    /**
+     * @return the word, emoji and word pair leaderboards of the chat
+     */
+    synchronized TokenStats getTokenStats() {
+        if (uncounted > 0) {
+            tokenStats.add(messages, 0, uncounted);
+            uncounted = 0;
+        }
+        return tokenStats;
+    }
+
+    boolean isValid() {
+        return valid;
+    }
+
+    @Override
+    @NonNull
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (Sender sender : sortedSenders) {
+            s.append(sender.getName());
+            s.append(", ");
+            s.append(sender.getMsgCount());
+            s.append("\n");
+        }
+        return s.toString();
+    }
+}
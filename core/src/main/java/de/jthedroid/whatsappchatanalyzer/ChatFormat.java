@@ -0,0 +1,70 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * Describes the header format of one export: date field order, date separator, 12h or 24h time
+ * and whether seconds are included.
+ */
+class ChatFormat {
+    static final int ORDER_DMY = 0, ORDER_MDY = 1, ORDER_YMD = 2;
+    private static final char ANY_SEPARATOR = '?';
+
+    final int order;
+    final char separator;
+    final boolean twelveHour, seconds;
+    /**
+     * strict formats only accept headers that match all fields exactly,
+     * lenient ones accept any separator and time format and swap day and month if necessary
+     */
+    final boolean strict;
+
+    ChatFormat(int order, char separator, boolean twelveHour, boolean seconds, boolean strict) {
+        this.order = order;
+        this.separator = separator;
+        this.twelveHour = twelveHour;
+        this.seconds = seconds;
+        this.strict = strict;
+    }
+
+    /**
+     * @return a lenient format using the day/month order of the device's locale
+     */
+    static ChatFormat forDefaultLocale() {
+        int order = ORDER_DMY;
+        DateFormat df = DateFormat.getDateInstance(DateFormat.SHORT, Locale.getDefault());
+        if (df instanceof SimpleDateFormat) {
+            String pattern = ((SimpleDateFormat) df).toPattern();
+            int d = pattern.indexOf('d'), m = pattern.indexOf('M');
+            if (d >= 0 && m >= 0 && m < d) order = ORDER_MDY;
+        }
+        return new ChatFormat(order, ANY_SEPARATOR, false, false, false);
+    }
+
+    boolean acceptsSeparator(char c) {
+        return separator == ANY_SEPARATOR ? c == '/' || c == '.' || c == '-' : c == separator;
+    }
+
+    /**
+     * @return the format encoded in a short String, e.g. "1/hs" for M/d/y with 12h time and seconds
+     */
+    @Override
+    @NonNull
+    public String toString() {
+        return "" + order + separator + (twelveHour ? "h" : "") + (seconds ? "s" : "") + (strict ? "" : "~");
+    }
+
+    @Nullable
+    static ChatFormat fromString(@Nullable String s) {
+        if (s == null || s.length() < 2) return null;
+        int order = s.charAt(0) - '0';
+        if (order < ORDER_DMY || order > ORDER_YMD) return null;
+        String flags = s.substring(2);
+        return new ChatFormat(order, s.charAt(1), flags.contains("h"), flags.contains("s"), !flags.contains("~"));
+    }
+}
@@ -0,0 +1,128 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.text.ParsePosition;
+import java.util.Arrays;
+
+/**
+ * Detects the {@link ChatFormat} of an export from the first few KB of the stream.
+ */
+class ChatFormatDetector {
+    private static final int SAMPLE_SIZE = 16 * 1024;
+
+    private ChatFormatDetector() {
+    }
+
+    /**
+     * Samples the first few KB of data.
+     *
+     * @param known a previously detected format for the same source, which is reused if it still
+     *              matches the sample
+     * @return the detected format, or a lenient one for the device's locale if the sample contains
+     * no headers
+     */
+    @NonNull
+    static ChatFormat detect(@NonNull ByteBuffer data, @Nullable ChatFormat known) {
+        ByteBuffer sample = data.duplicate();
+        sample.limit(Math.min(data.limit(), SAMPLE_SIZE));
+        int len = sample.limit();
+        int[] lineStarts = new int[64];
+        int lines = 0;
+        for (int i = 0; i < len; i++) {
+            if (i == 0 || sample.get(i - 1) == '\n') {
+                if (lines == lineStarts.length) lineStarts = Arrays.copyOf(lineStarts, lines * 2);
+                lineStarts[lines++] = i;
+            }
+        }
+        lineStarts = Arrays.copyOf(lineStarts, lines);
+        if (known != null) {
+            int count = countHeaders(sample, lineStarts, known);
+            if (count > 0 && count == countHeaders(sample, lineStarts, ChatFormat.forDefaultLocale())) return known;
+        }
+        return detect(sample, lineStarts);
+    }
+
+    @NonNull
+    private static ChatFormat detect(ByteBuffer sample, int[] lineStarts) {
+        TimestampParser lenient = new TimestampParser(ChatFormat.forDefaultLocale());
+        ParsePosition pp = new ParsePosition(0);
+        int max1 = 0, max2 = 0, headers = 0, twelveHour = 0, seconds = 0;
+        boolean yearFirst = false;
+        char separator = 0;
+        for (int start : lineStarts) {
+            pp.setIndex(start);
+            lenient.parse(sample, pp);
+            if (pp.getErrorIndex() != -1) continue;
+            headers++;
+            int i = start, n1 = 0, n2 = 0;
+            while (isDigit(sample.get(i))) n1 = n1 * 10 + sample.get(i++) - '0';
+            if (i - start > 2) yearFirst = true;
+            if (separator == 0) separator = (char) sample.get(i);
+            i++;
+            while (isDigit(sample.get(i))) n2 = n2 * 10 + sample.get(i++) - '0';
+            max1 = Math.max(max1, n1);
+            max2 = Math.max(max2, n2);
+            int colons = 0;
+            for (; i < pp.getIndex(); i++) if (sample.get(i) == ':') colons++;
+            if (colons > 1) seconds++;
+            int m = pp.getIndex() - 4;  //"M - " or "M. - "
+            if (sample.get(m) == '.') m--;
+            if ((sample.get(m) | 0x20) == 'm') twelveHour++;
+        }
+        if (headers == 0) return ChatFormat.forDefaultLocale();
+        boolean hasTwelveHour = twelveHour * 2 > headers, hasSeconds = seconds * 2 > headers;
+        int order;
+        if (yearFirst) order = ChatFormat.ORDER_YMD;
+        else if (max1 > 12 && max2 <= 12) order = ChatFormat.ORDER_DMY;
+        else if (max2 > 12 && max1 <= 12) order = ChatFormat.ORDER_MDY;
+        else {
+            //ambiguous sample: chats are chronological, so the order in which the timestamps go
+            //backwards less often and cover the shorter time span wins
+            ChatFormat dmy = new ChatFormat(ChatFormat.ORDER_DMY, separator, hasTwelveHour, hasSeconds, true);
+            ChatFormat mdy = new ChatFormat(ChatFormat.ORDER_MDY, separator, hasTwelveHour, hasSeconds, true);
+            long dmyScore = chronologyScore(sample, lineStarts, dmy), mdyScore = chronologyScore(sample, lineStarts, mdy);
+            if (dmyScore == mdyScore) order = ChatFormat.forDefaultLocale().order;
+            else order = dmyScore < mdyScore ? ChatFormat.ORDER_DMY : ChatFormat.ORDER_MDY;
+        }
+        return new ChatFormat(order, separator, hasTwelveHour, hasSeconds, true);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static int countHeaders(ByteBuffer sample, int[] lineStarts, ChatFormat format) {
+        TimestampParser parser = new TimestampParser(format);
+        ParsePosition pp = new ParsePosition(0);
+        int count = 0;
+        for (int start : lineStarts) {
+            pp.setIndex(start);
+            parser.parse(sample, pp);
+            if (pp.getErrorIndex() == -1) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return a score that is lower the more chronological the timestamps are when parsed with format
+     */
+    private static long chronologyScore(ByteBuffer sample, int[] lineStarts, ChatFormat format) {
+        TimestampParser parser = new TimestampParser(format);
+        ParsePosition pp = new ParsePosition(0);
+        long first = 0, last = 0;
+        int backwards = 0, count = 0;
+        for (int start : lineStarts) {
+            pp.setIndex(start);
+            long t = parser.parse(sample, pp);
+            if (pp.getErrorIndex() != -1) continue;
+            if (count++ == 0) first = t;
+            else if (t < last) backwards++;
+            last = t;
+        }
+        long spanMinutes = Math.abs(last - first) / 60000;
+        return ((long) backwards << 32) + spanMinutes;
+    }
+}
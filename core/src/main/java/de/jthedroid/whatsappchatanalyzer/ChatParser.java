@@ -0,0 +1,240 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParsePosition;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parses a UTF-8 chat export held in a (usually memory mapped) {@link ByteBuffer}. The buffer is
+ * split into byte ranges of about {@link #CHUNK_SIZE} bytes, and every range is moved forward to
+ * the next message header, so chunks can be parsed independently on a {@link ForkJoinPool}. The
+ * results are merged into the {@link Chat} in input order, and only a few chunks per thread are
+ * submitted ahead of the one that is merged next. With a parallelism of 1 the chunks are
+ * parsed on the calling thread.
+ * <p>
+ * Only headers are scanned; message texts are kept as byte ranges and decoded when they are used.
+ * Chunk tasks report their progress about every {@link #PROGRESS_BYTES} bytes.
+ */
+class ChatParser {
+    static final int CHUNK_SIZE = 1 << 20;
+    static final int AVERAGE_MESSAGE_SIZE = 64;
+    private static final int UTF8_BOM_LENGTH = 3;
+    private static final int PROGRESS_BYTES = 64 * 1024;
+    private static final int IN_FLIGHT_PER_THREAD = 2;
+
+    private final TimestampParser parser;
+    private final int parallelism;
+    private final LoadingListener listener;
+
+    ChatParser(@NonNull TimestampParser parser, int parallelism) {
+        this(parser, parallelism, null);
+    }
+
+    /**
+     * @param listener receives the parsing progress, or null
+     */
+    ChatParser(@NonNull TimestampParser parser, int parallelism, @Nullable LoadingListener listener) {
+        this.parser = parser;
+        this.parallelism = Math.max(1, parallelism);
+        this.listener = listener;
+    }
+
+    void parse(@NonNull ByteBuffer data, @NonNull Chat chat) throws InterruptedException {
+        parse(data, hasBom(data) ? UTF8_BOM_LENGTH : 0, chat);
+    }
+
+    /**
+     * Parses data from start on, which must be the start of a line
+     */
+    void parse(@NonNull ByteBuffer data, int start, @NonNull Chat chat) throws InterruptedException {
+        ArrayList<ChunkTask> tasks = new ArrayList<>();
+        ParsePosition pp = new ParsePosition(0);
+        int limit = data.limit();
+        LoadingProgress.Tracker tracker = listener == null ? null : new LoadingProgress.Tracker(limit - start, listener);
+        StageTimes times = new StageTimes();
+        while (start < limit) {
+            int end = start + CHUNK_SIZE >= limit ? limit : findNextHeaderStart(data, start + CHUNK_SIZE, pp);
+            tasks.add(new ChunkTask(parser, data, start, end, tracker, times));
+            start = end;
+        }
+        if (parallelism == 1 || tasks.size() == 1) {
+            for (ChunkTask task : tasks) addChunk(chat, task.compute(), times);
+            if (tracker != null) tracker.finish();
+            times.record();
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            //at most IN_FLIGHT_PER_THREAD chunks per thread are parsed but not merged yet, which
+            //bounds the memory held by finished results while an earlier chunk is still parsed
+            ArrayDeque<Future<ChunkResult>> futures = new ArrayDeque<>();
+            int next = 0;
+            while (next < tasks.size() || !futures.isEmpty()) {
+                while (next < tasks.size() && futures.size() < IN_FLIGHT_PER_THREAD * parallelism) {
+                    futures.add(pool.submit(tasks.get(next)));
+                    tasks.set(next++, null);
+                }
+                addChunk(chat, futures.remove().get(), times);
+            }
+            if (tracker != null) tracker.finish();
+            times.record();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void addChunk(Chat chat, ChunkResult chunk, StageTimes times) {
+        long start = System.nanoTime();
+        chat.addChunk(chunk);
+        times.buildNanos.addAndGet(System.nanoTime() - start);
+        times.messages.addAndGet(chunk.messages.size());
+    }
+
+    private static boolean hasBom(ByteBuffer data) {
+        return data.limit() >= UTF8_BOM_LENGTH && data.get(0) == (byte) 0xEF && data.get(1) == (byte) 0xBB && data.get(2) == (byte) 0xBF;
+    }
+
+    /**
+     * @return the start of the first line at or after from that is a message header, or the end of the data
+     */
+    private int findNextHeaderStart(ByteBuffer data, int from, ParsePosition pp) {
+        int limit = data.limit();
+        for (int i = from; i < limit; i++) {
+            if (data.get(i - 1) != '\n') continue;
+            pp.setIndex(i);
+            parser.parse(data, pp);
+            if (pp.getErrorIndex() == -1) return i;
+        }
+        return limit;
+    }
+
+    /**
+     * The messages of one chunk. Senders are numbered per chunk in order of their first message.
+     */
+    static class ChunkResult {
+        /**
+         * sender ids refer to the chunk's own sender table
+         */
+        final MessageStore messages;
+        final SenderTable senders = new SenderTable();
+        final TokenStats tokens = new TokenStats();
+
+        ChunkResult(MessageStore messages) {
+            this.messages = messages;
+        }
+    }
+
+    /**
+     * The time spent on all chunks of one parse, which is recorded in {@link PerfLog} as one span
+     * per stage
+     */
+    private static class StageTimes {
+        private final long startMillis = System.currentTimeMillis();
+        final AtomicLong scanNanos = new AtomicLong(), bytes = new AtomicLong();
+        final AtomicLong buildNanos = new AtomicLong(), messages = new AtomicLong();
+
+        void record() {
+            PerfLog.record("parse.headerScan", startMillis, scanNanos.get(), bytes.get());
+            PerfLog.record("parse.messageBuild", startMillis, buildNanos.get(), messages.get());
+        }
+    }
+
+    private static class ChunkTask extends RecursiveTask<ChunkResult> {
+        private static final long serialVersionUID = 1L;
+        private final TimestampParser parser;
+        private final ByteBuffer data;
+        private final int start, end;
+        private final LoadingProgress.Tracker tracker;
+        private final StageTimes times;
+
+        ChunkTask(TimestampParser parser, ByteBuffer data, int start, int end, LoadingProgress.Tracker tracker, StageTimes times) {
+            this.parser = parser;
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            this.tracker = tracker;
+            this.times = times;
+        }
+
+        @Override
+        protected ChunkResult compute() {
+            long startNanos = System.nanoTime();
+            ChunkResult result = new ChunkResult(new MessageStore(data, (end - start) / AVERAGE_MESSAGE_SIZE));
+            ParsePosition pp = new ParsePosition(0);
+            int msgStart = -1, headerEnd = 0;
+            long time = 0;
+            int reported = start, reportedMessages = 0;  //progress reported so far
+            for (int lineStart = start; lineStart < end; ) {
+                int lineEnd = lineStart;
+                while (lineEnd < end && data.get(lineEnd) != '\n') lineEnd++;
+                pp.setIndex(lineStart);
+                long t = parser.parse(data, pp);
+                if (pp.getErrorIndex() == -1) {
+                    if (msgStart >= 0) addMessage(result, time, headerEnd, lineStart);
+                    if (tracker != null && lineStart - reported >= PROGRESS_BYTES) {
+                        int size = result.messages.size();
+                        tracker.add(lineStart - reported, size - reportedMessages);
+                        reported = lineStart;
+                        reportedMessages = size;
+                    }
+                    msgStart = lineStart;
+                    headerEnd = pp.getIndex();
+                    time = t;
+                }
+                lineStart = lineEnd + 1;
+            }
+            if (msgStart >= 0) addMessage(result, time, headerEnd, end);
+            if (tracker != null) tracker.add(end - reported, result.messages.size() - reportedMessages);
+            times.scanNanos.addAndGet(System.nanoTime() - startNanos);
+            times.bytes.addAndGet(end - start);
+            //count words while the chunk's texts are still in the cache
+            result.tokens.add(result.messages, 0, result.messages.size());
+            return result;
+        }
+
+        /**
+         * @param msgEnd the start of the next message or the end of the chunk
+         */
+        private void addMessage(ChunkResult result, long time, int headerEnd, int msgEnd) {
+            if (msgEnd > headerEnd && data.get(msgEnd - 1) == '\n') msgEnd--;
+            if (msgEnd > headerEnd && data.get(msgEnd - 1) == '\r') msgEnd--;
+            int colPos = -1, lineEnd = headerEnd;
+            for (; lineEnd < msgEnd && data.get(lineEnd) != '\n'; lineEnd++) {
+                if (colPos < 0 && data.get(lineEnd) == ':') colPos = lineEnd;
+            }
+            int senderId = MessageStore.NO_SENDER, textStart = headerEnd;
+            byte flags = 0;
+            if (colPos >= 0) {
+                senderId = result.senders.intern(data, headerEnd, colPos);
+                textStart = colPos + 1;
+            } else flags |= MessageStore.FLAG_SYSTEM;
+            if (lineEnd < msgEnd) flags |= MessageStore.FLAG_MULTILINE;
+            result.messages.add(time, senderId, textStart, msgEnd, flags);
+        }
+    }
+
+    /**
+     * Decodes length bytes of UTF-8 starting at offset without changing the buffer's position, so
+     * the buffer can be shared between threads.
+     */
+    static String decode(ByteBuffer data, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer b = data.duplicate();
+        b.position(offset);
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,324 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.TimeZone;
+
+/**
+ * File format of a parsed chat. A snapshot holds the message columns, but not the export: message
+ * texts stay byte offsets into it, so a snapshot can only be restored together with the export it
+ * was made from. Snapshots are found by the {@link #fingerprint(ByteBuffer) fingerprint} of the
+ * export, which only samples it, and then verified with a {@link #blockHashes(ByteBuffer, long)
+ * hash} of every block of it.
+ * <pre>
+ * header   magic, version, fingerprint, export size, message count, trailer offset
+ * rows     time, sender id, text start, text end and flags of every message
+ * trailer  number and hashes of the export's blocks, length and UTF-8 bytes of every sender
+ *          name, in id order, the time zone, the
+ *          {@link AggregationCube}, the {@link ConversationStats} and the {@link TimeIndex} order
+ * </pre>
+ * Rows have a fixed size, so the row of message i is found without reading the ones before. The
+ * aggregates are restored as they are, so restoring doesn't compute anything per message; a
+ * snapshot made in another time zone isn't used, as the cube's days depend on it.
+ */
+final class ChatSnapshot {
+    static final int MAGIC = 0x57434153;  //"WCAS"
+    static final int VERSION = 5;
+    static final int HEADER_SIZE = 36, ROW_SIZE = 21;
+    static final int BLOCK_SIZE = 64 * 1024;
+    private static final int SAMPLE_BLOCKS = 16, SAMPLE_BLOCK_SIZE = 4096;
+
+    private ChatSnapshot() {
+    }
+
+    /**
+     * Hashes the size and a few evenly spaced blocks of data. Only the sampled pages of a mapped
+     * export have to be read.
+     */
+    static long fingerprint(@NonNull ByteBuffer data) {
+        int size = data.limit();
+        long h = 0xCBF29CE484222325L;  //FNV-1a
+        for (int shift = 0; shift < 32; shift += 8) {
+            h ^= (size >>> shift) & 0xFF;
+            h *= 0x100000001B3L;
+        }
+        int step = Math.max(SAMPLE_BLOCK_SIZE, size / SAMPLE_BLOCKS);
+        for (int block = 0; block < size; block += step) {
+            int end = Math.min(size, block + SAMPLE_BLOCK_SIZE);
+            for (int i = block; i < end; i++) {
+                h ^= data.get(i) & 0xFF;
+                h *= 0x100000001B3L;
+            }
+        }
+        for (int i = Math.max(0, size - SAMPLE_BLOCK_SIZE); i < size; i++) {  //the end changes when messages are appended
+            h ^= data.get(i) & 0xFF;
+            h *= 0x100000001B3L;
+        }
+        return h;
+    }
+
+    /**
+     * Hashes every {@link #BLOCK_SIZE} bytes of data up to size on their own, the last block may be
+     * shorter. Unlike the fingerprint this reads all of it, so it is only used to verify a snapshot
+     * that was found by its fingerprint.
+     */
+    @NonNull
+    static long[] blockHashes(@NonNull ByteBuffer data, long size) {
+        return blockHashes(data, size, new long[0], 0);
+    }
+
+    /**
+     * Like {@link #blockHashes(ByteBuffer, long)}, but only hashes the blocks that don't lie
+     * completely within the first knownSize bytes, whose hashes are known
+     */
+    private static long[] blockHashes(ByteBuffer data, long size, long[] known, long knownSize) {
+        ByteBuffer b = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        long[] hashes = new long[blockCount(size)];
+        int reused = (int) Math.min(knownSize / BLOCK_SIZE, hashes.length);
+        System.arraycopy(known, 0, hashes, 0, reused);
+        for (int block = reused; block < hashes.length; block++) hashes[block] = hashBlock(b, block, size);
+        return hashes;
+    }
+
+    /**
+     * @param hashes the block hashes of the export a snapshot was made from
+     * @return whether data starts with that export, which has size bytes
+     */
+    static boolean matches(@NonNull long[] hashes, @NonNull ByteBuffer data, long size) {
+        if (size > data.limit() || hashes.length != blockCount(size)) return false;
+        ByteBuffer b = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        for (int block = 0; block < hashes.length; block++) {
+            if (hashBlock(b, block, size) != hashes[block]) return false;
+        }
+        return true;
+    }
+
+    private static int blockCount(long size) {
+        return (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+    }
+
+    private static long hashBlock(ByteBuffer b, int block, long size) {
+        int from = block * BLOCK_SIZE, to = (int) Math.min(size, from + (long) BLOCK_SIZE);
+        long h = 0x9E3779B97F4A7C15L ^ (to - from);
+        int i = from;
+        for (; i + 8 <= to; i += 8) h = mix(h ^ b.getLong(i));
+        long tail = 0;
+        for (; i < to; i++) tail = tail << 8 | (b.get(i) & 0xFF);
+        return mix(h ^ tail);
+    }
+
+    private static long mix(long h) {
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * The fixed size start of a snapshot
+     */
+    static class Header {
+        final long fingerprint, exportSize;
+        final int messageCount;
+        final long trailerOffset;
+
+        Header(long fingerprint, long exportSize, int messageCount, long trailerOffset) {
+            this.fingerprint = fingerprint;
+            this.exportSize = exportSize;
+            this.messageCount = messageCount;
+            this.trailerOffset = trailerOffset;
+        }
+
+        /**
+         * @return the header at the start of channel, or null if it isn't a snapshot of this version
+         */
+        @Nullable
+        static Header read(@NonNull FileChannel channel) throws IOException {
+            ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE);
+            while (b.hasRemaining()) {
+                if (channel.read(b, b.position()) < 0) return null;
+            }
+            b.flip();
+            if (b.getInt() != MAGIC || b.getInt() != VERSION) return null;
+            return new Header(b.getLong(), b.getLong(), b.getInt(), b.getLong());
+        }
+
+        /**
+         * @return the block hashes of the export, which start the trailer
+         * @throws IOException if there aren't as many as the export has blocks
+         */
+        @NonNull
+        long[] readBlockHashes(@NonNull FileChannel channel) throws IOException {
+            int count = blockCount(exportSize);
+            ByteBuffer b = ByteBuffer.allocate(4 + 8 * count);
+            while (b.hasRemaining()) {
+                if (channel.read(b, trailerOffset + b.position()) < 0) throw new IOException("damaged snapshot");
+            }
+            b.flip();
+            if (b.getInt() != count) throw new IOException("damaged snapshot");
+            long[] hashes = new long[count];
+            b.asLongBuffer().get(hashes);
+            return hashes;
+        }
+
+        /**
+         * Overwrites the header at the start of channel, so the snapshot isn't valid while it is
+         * changed
+         */
+        static void invalidate(@NonNull FileChannel channel) throws IOException {
+            ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE);
+            while (b.hasRemaining()) channel.write(b, b.position());
+        }
+
+        private void write(FileChannel channel) throws IOException {
+            ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE);
+            b.putInt(MAGIC).putInt(VERSION).putLong(fingerprint).putLong(exportSize).putInt(messageCount).putLong(trailerOffset);
+            b.flip();
+            while (b.hasRemaining()) channel.write(b, b.position());
+        }
+    }
+
+    /**
+     * @return about the size of the snapshot of chat in bytes
+     */
+    static long estimateSize(@NonNull Chat chat) {
+        int senders = chat.getSenderTable().size();
+        return HEADER_SIZE + (long) (ROW_SIZE + 4) * chat.getMsgCount() + 8L * blockCount(chat.getMessages().getTextArena().limit())
+                + (64L + 4 * LogHistogram.BUCKETS) * senders
+                + 4L * (senders + 1) * chat.getCube().getDayCount();
+    }
+
+    /**
+     * Writes a snapshot of chat, which was parsed from data, to the empty channel
+     */
+    static void write(@NonNull Chat chat, @NonNull ByteBuffer data, long fingerprint, @NonNull FileChannel channel) throws IOException {
+        write(chat, data, fingerprint, channel, 0, blockHashes(data, data.limit()));
+    }
+
+    /**
+     * Turns the snapshot in channel into one of chat, which was {@link Chat#extend extended} by
+     * the messages appended to the export. The rows of the messages that were kept stay where they
+     * are and only the block hashes of the new part of the export are computed.
+     *
+     * @param previous       the header of the snapshot in channel
+     * @param previousHashes the block hashes of the snapshot in channel
+     */
+    static void append(@NonNull Chat chat, @NonNull ByteBuffer data, long fingerprint, @NonNull FileChannel channel,
+                       @NonNull Header previous, @NonNull long[] previousHashes) throws IOException {
+        int kept = previous.messageCount - 1;  //the last message was parsed again
+        if (kept < 0 || kept > chat.getMsgCount()) throw new IOException("not a snapshot of a prefix");
+        Header.invalidate(channel);
+        channel.truncate(HEADER_SIZE + (long) ROW_SIZE * kept);
+        write(chat, data, fingerprint, channel, kept, blockHashes(data, data.limit(), previousHashes, previous.exportSize));
+    }
+
+    /**
+     * Writes the rows from message from on, the trailer and then the header
+     */
+    private static void write(Chat chat, ByteBuffer data, long fingerprint, FileChannel channel, int from, long[] hashes) throws IOException {
+        MessageStore messages = chat.getMessages();
+        SenderTable senders = chat.getSenderTable();
+        int n = messages.size();
+        channel.position(HEADER_SIZE + (long) ROW_SIZE * from);
+        ByteBuffer b = ByteBuffer.allocate(64 * 1024);
+        for (int i = from; i < n; i++) {
+            b = flushIfFull(b, ROW_SIZE, channel);
+            b.putLong(messages.getTime(i)).putInt(messages.getSenderId(i)).putInt(messages.getTextStart(i))
+                    .putInt(messages.getTextEnd(i)).put(messages.getFlags(i));
+        }
+        b.flip();
+        while (b.hasRemaining()) channel.write(b);
+        //not closed, that would close the channel
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), b.capacity()));
+        out.writeInt(hashes.length);
+        for (long h : hashes) out.writeLong(h);
+        out.writeInt(senders.size());
+        for (int id = 0; id < senders.size(); id++) {
+            byte[] name = senders.getName(id).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+        }
+        AggregationCube cube = chat.getCube();
+        out.writeUTF(cube.getTimeZone().getID());
+        cube.write(out);
+        chat.getConversationStats().write(out);
+        int[] order = chat.getTimeIndex().getOrder();
+        out.writeInt(order == null ? -1 : order.length);
+        if (order != null) for (int i : order) out.writeInt(i);
+        out.flush();
+        //the header comes last, so a snapshot that wasn't written completely isn't valid
+        new Header(fingerprint, data.limit(), n, HEADER_SIZE + (long) ROW_SIZE * n).write(channel);
+    }
+
+    /**
+     * @return b, or a cleared buffer with at least bytes remaining after writing b's content
+     */
+    private static ByteBuffer flushIfFull(ByteBuffer b, int bytes, FileChannel channel) throws IOException {
+        if (b.remaining() >= bytes) return b;
+        b.flip();
+        while (b.hasRemaining()) channel.write(b);
+        return bytes <= b.capacity() ? (ByteBuffer) b.clear() : ByteBuffer.allocate(bytes);
+    }
+
+    /**
+     * Restores the chat of a snapshot. The caller must have made sure that data starts with the
+     * export the snapshot was made from, with {@link #matches(long[], ByteBuffer, long)}.
+     *
+     * @param data the export, which becomes the text arena of the chat
+     * @return the restored chat, which may be invalid
+     * @throws IOException if the snapshot is damaged or was made in another time zone
+     */
+    @NonNull
+    static Chat read(@NonNull FileChannel channel, @NonNull Header header, @NonNull ByteBuffer data, @Nullable LoadingListener listener) throws IOException {
+        int n = header.messageCount;
+        if (header.exportSize > data.limit() || header.trailerOffset != HEADER_SIZE + (long) ROW_SIZE * n) {
+            throw new IOException("damaged snapshot");
+        }
+        channel.position(header.trailerOffset + 4 + 8L * blockCount(header.exportSize));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+        int senderCount = in.readInt();
+        SenderTable senders = new SenderTable();
+        for (int id = 0; id < senderCount; id++) {
+            byte[] name = new byte[in.readInt()];
+            in.readFully(name);
+            senders.intern(ByteBuffer.wrap(name), 0, name.length);
+        }
+        TimeZone timeZone = TimeZone.getDefault();
+        if (!in.readUTF().equals(timeZone.getID())) throw new IOException("snapshot of another time zone");
+        AggregationCube cube = new AggregationCube(timeZone);
+        cube.read(in);
+        ConversationStats stats = new ConversationStats();
+        stats.read(in);
+        int orderLength = in.readInt();
+        int[] order = null;
+        if (orderLength >= 0) {
+            if (orderLength != n) throw new IOException("damaged snapshot");
+            order = new int[n];
+            for (int i = 0; i < n; i++) order[i] = in.readInt();
+        }
+        ByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) ROW_SIZE * n);
+        long[] times = new long[n];
+        int[] senderIds = new int[n], textStarts = new int[n], textEnds = new int[n];
+        byte[] flags = new byte[n];
+        for (int i = 0; i < n; i++) {
+            times[i] = b.getLong();
+            senderIds[i] = b.getInt();
+            textStarts[i] = b.getInt();
+            textEnds[i] = b.getInt();
+            flags[i] = b.get();
+        }
+        MessageStore messages = new MessageStore(data, times, senderIds, textStarts, textEnds, flags);
+        Chat chat = new Chat();
+        chat.init(messages, senders, cube, stats, new TimeIndex(messages, order), listener);
+        return chat;
+    }
+}
@@ -0,0 +1,241 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reply times, turns and conversation sessions, computed in one pass over the messages. Every
+ * metric only depends on a message and the message before it:
+ * <ul>
+ * <li>a gap of more than {@link #SESSION_GAP} starts a new session, started by the sender of the
+ * message after the gap</li>
+ * <li>a message whose sender differs from the sender of the previous message starts a turn, and
+ * within a session it is a reply to that sender; the time between both messages is its reply
+ * time</li>
+ * </ul>
+ * Reply times go into a {@link LogHistogram} per sender, so memory doesn't depend on the number of
+ * messages. System messages are skipped.
+ */
+class ConversationStats {
+    static final long SESSION_GAP = 60 * 60 * 1000;
+    private static final int EMPTY_KEY = -1;
+
+    private LogHistogram[] replyTimes = new LogHistogram[0];
+    private int[] turns = new int[0], sessionsStarted = new int[0];
+    private int sessions = 0;
+    private final LogHistogram allReplyTimes = new LogHistogram();
+    //reply counts by (replying sender, sender replied to), open addressing over both ids in one long
+    private long[] pairKeys = new long[64];
+    private int[] pairCounts = new int[64];
+    private int pairs = 0;
+    private int last = -1;  //index of the last counted message that isn't a system message
+
+    ConversationStats() {
+        Arrays.fill(pairKeys, EMPTY_KEY);
+    }
+
+    /**
+     * Adds the messages [from, to) of messages, which must follow the messages added before
+     */
+    void add(@NonNull MessageStore messages, int from, int to, int senderCount) {
+        ensureSenders(senderCount);
+        for (int i = from; i < to; i++) {
+            if (messages.getSenderId(i) == MessageStore.NO_SENDER) continue;
+            count(messages, last, i, 1);
+            last = i;
+        }
+    }
+
+    /**
+     * Removes message i, which must be the last message added
+     */
+    void remove(@NonNull MessageStore messages, int i) {
+        if (i != last) return;  //a system message, which wasn't counted
+        int previous = i - 1;
+        while (previous >= 0 && messages.getSenderId(previous) == MessageStore.NO_SENDER) previous--;
+        count(messages, previous, i, -1);
+        last = previous;
+    }
+
+    /**
+     * Counts message i, which follows message previous (-1 if there is none), delta times
+     */
+    private void count(MessageStore messages, int previous, int i, int delta) {
+        int sender = messages.getSenderId(i);
+        long gap = previous < 0 ? Long.MAX_VALUE : messages.getTime(i) - messages.getTime(previous);
+        if (gap > SESSION_GAP) {
+            sessions += delta;
+            sessionsStarted[sender] += delta;
+        }
+        int previousSender = previous < 0 ? MessageStore.NO_SENDER : messages.getSenderId(previous);
+        if (sender == previousSender) return;
+        turns[sender] += delta;
+        if (previousSender == MessageStore.NO_SENDER || gap > SESSION_GAP) return;
+        gap = Math.max(0, gap);  //clock changes can make time go back
+        if (delta > 0) {
+            replyTimes[sender].add(gap);
+            allReplyTimes.add(gap);
+        } else {
+            replyTimes[sender].remove(gap);
+            allReplyTimes.remove(gap);
+        }
+        addReply(sender, previousSender, delta);
+    }
+
+    private void ensureSenders(int count) {
+        int old = replyTimes.length;
+        if (count <= old) return;
+        replyTimes = Arrays.copyOf(replyTimes, count);
+        for (int id = old; id < count; id++) replyTimes[id] = new LogHistogram();
+        turns = Arrays.copyOf(turns, count);
+        sessionsStarted = Arrays.copyOf(sessionsStarted, count);
+    }
+
+    private static long pairKey(int from, int to) {
+        return (long) from << 32 | to;
+    }
+
+    private int findPair(long key) {
+        int mask = pairKeys.length - 1;
+        long h = key * 0x9E3779B97F4A7C15L;
+        for (int slot = (int) (h >>> 32) & mask; ; slot = (slot + 1) & mask) {
+            if (pairKeys[slot] == key || pairKeys[slot] == EMPTY_KEY) return slot;
+        }
+    }
+
+    private void addReply(int from, int to, int delta) {
+        long key = pairKey(from, to);
+        int slot = findPair(key);
+        if (pairKeys[slot] == EMPTY_KEY) {
+            pairKeys[slot] = key;
+            pairs++;
+        }
+        pairCounts[slot] += delta;
+        if (pairs * 2 > pairKeys.length) {
+            long[] keys = pairKeys;
+            int[] counts = pairCounts;
+            pairKeys = new long[keys.length * 2];
+            pairCounts = new int[keys.length * 2];
+            Arrays.fill(pairKeys, EMPTY_KEY);
+            for (int s = 0; s < keys.length; s++) {
+                if (keys[s] == EMPTY_KEY) continue;
+                int newSlot = findPair(keys[s]);
+                pairKeys[newSlot] = keys[s];
+                pairCounts[newSlot] = counts[s];
+            }
+        }
+    }
+
+    /**
+     * @return how often sender from replied to sender to
+     */
+    int getReplyCount(int from, int to) {
+        int slot = findPair(pairKey(from, to));
+        return pairKeys[slot] == EMPTY_KEY ? 0 : pairCounts[slot];
+    }
+
+    /**
+     * @return the ids of the at most k senders that sender from replied to most often, most often
+     * first
+     */
+    @NonNull
+    int[] getTopReplyTargets(int from, int k) {
+        int[] ids = new int[k], counts = new int[k];
+        int n = 0;
+        for (int s = 0; s < pairKeys.length; s++) {
+            long key = pairKeys[s];
+            if (key == EMPTY_KEY || (int) (key >>> 32) != from || pairCounts[s] <= 0) continue;
+            int count = pairCounts[s], to = (int) key;
+            //insertion into the sorted top k
+            int pos = n < k ? n++ : k;
+            while (pos > 0 && (counts[pos - 1] < count || counts[pos - 1] == count && ids[pos - 1] > to)) {
+                if (pos < k) {
+                    ids[pos] = ids[pos - 1];
+                    counts[pos] = counts[pos - 1];
+                }
+                pos--;
+            }
+            if (pos < k) {
+                ids[pos] = to;
+                counts[pos] = count;
+            }
+        }
+        return Arrays.copyOf(ids, n);
+    }
+
+    /**
+     * @return the reply times of sender id in milliseconds
+     */
+    @NonNull
+    LogHistogram getReplyTimes(int id) {
+        return replyTimes[id];
+    }
+
+    @NonNull
+    LogHistogram getReplyTimes() {
+        return allReplyTimes;
+    }
+
+    int getTurns(int id) {
+        return turns[id];
+    }
+
+    int getSessionsStarted(int id) {
+        return sessionsStarted[id];
+    }
+
+    int getSessions() {
+        return sessions;
+    }
+
+    void write(@NonNull DataOutput out) throws IOException {
+        out.writeInt(replyTimes.length);
+        for (int id = 0; id < replyTimes.length; id++) {
+            replyTimes[id].write(out);
+            out.writeInt(turns[id]);
+            out.writeInt(sessionsStarted[id]);
+        }
+        out.writeInt(sessions);
+        allReplyTimes.write(out);
+        out.writeInt(pairKeys.length);
+        for (int s = 0; s < pairKeys.length; s++) {
+            out.writeLong(pairKeys[s]);
+            out.writeInt(pairCounts[s]);
+        }
+        out.writeInt(pairs);
+        out.writeInt(last);
+    }
+
+    /**
+     * Replaces the content of these stats with stats written by {@link #write(DataOutput)}, so
+     * messages can be added to them again
+     */
+    void read(@NonNull DataInput in) throws IOException {
+        int senders = in.readInt();
+        replyTimes = new LogHistogram[0];
+        turns = new int[0];
+        sessionsStarted = new int[0];
+        ensureSenders(senders);
+        for (int id = 0; id < senders; id++) {
+            replyTimes[id].read(in);
+            turns[id] = in.readInt();
+            sessionsStarted[id] = in.readInt();
+        }
+        sessions = in.readInt();
+        allReplyTimes.read(in);
+        int slots = in.readInt();
+        if (Integer.bitCount(slots) != 1) throw new IOException("invalid pair table size " + slots);
+        pairKeys = new long[slots];
+        pairCounts = new int[slots];
+        for (int s = 0; s < slots; s++) {
+            pairKeys[s] = in.readLong();
+            pairCounts[s] = in.readInt();
+        }
+        pairs = in.readInt();
+        last = in.readInt();
+    }
+}
@@ -0,0 +1,322 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import java.util.Arrays;
+
+enum GraphMode {
+    LINEAR,
+    LAST,
+    ZERO
+    //NULL
+}
+
+enum GraphType {
+    DEFAULT,
+    BARGRAPH
+    //HISTOGRAM
+}
+
+class GraphData {
+    //scaled values have about a thousand distinct floats in this range, one per pixel
+    private static final float MIN_VIEW_SPAN = 1024 * Math.ulp(1f);
+    final private float[] rawXData, rawYData;
+    private float[] xData, yData;
+    private static final int LABEL_CACHE_SIZE = 16;
+    final private LabelFormatter xLabels, yLabels;
+    //direct mapped caches of the last labels, by point index
+    final private String[] xLabelCache = new String[LABEL_CACHE_SIZE], yLabelCache = new String[LABEL_CACHE_SIZE];
+    final private int[] labelCacheIndices = new int[LABEL_CACHE_SIZE];
+    final private GraphType graphType;
+    final private GraphMode mode;
+    final private boolean xSorted;
+    private GraphData downsampled;
+    private int downsampledTarget = -1;
+    private GraphPyramid pyramid;
+    private GraphData sliced;
+    private int slicedLevel = -1, slicedStart, slicedEnd;  //the positions in the pyramid level
+    private float xRange = 0;  //of the raw x values
+    private float minXSpan = 0;
+
+    GraphData(float[] rawXData, float[] rawYData, LabelFormatter xLabels, LabelFormatter yLabels) {
+        this(rawXData, rawYData, xLabels, yLabels, GraphType.DEFAULT);
+    }
+
+    GraphData(float[] rawXData, float[] rawYData, LabelFormatter xLabels, LabelFormatter yLabels, GraphType graphType) {
+        this(rawXData, rawYData, xLabels, yLabels, graphType, GraphMode.LINEAR);
+    }
+
+    GraphData(float[] rawXData, float[] rawYData, LabelFormatter xLabels, LabelFormatter yLabels, GraphType graphType, GraphMode graphMode) {
+        this.rawXData = rawXData;
+        this.rawYData = rawYData;
+        this.xLabels = xLabels;
+        this.yLabels = yLabels;
+        Arrays.fill(labelCacheIndices, -1);
+        this.graphType = graphType;
+        this.mode = graphMode;
+        xSorted = isSorted(rawXData);
+        scale();
+    }
+
+    /**
+     * Keeps the points at indices of source, including their scaled values and labels
+     */
+    private GraphData(GraphData source, int[] indices) {
+        int n = indices.length;
+        rawXData = new float[n];
+        rawYData = new float[n];
+        xData = new float[n];
+        yData = new float[n];
+        for (int i = 0; i < n; i++) {
+            int j = indices[i];
+            rawXData[i] = source.rawXData[j];
+            rawYData[i] = source.rawYData[j];
+            xData[i] = source.xData[j];
+            yData[i] = source.yData[j];
+        }
+        xLabels = source.xLabels;
+        yLabels = source.yLabels;
+        Arrays.fill(labelCacheIndices, -1);
+        graphType = source.graphType;
+        mode = source.mode;
+        xSorted = source.xSorted;
+        xRange = source.xRange;
+        minXSpan = source.minXSpan;
+    }
+
+    /**
+     * Reduces the data to about target points while keeping its shape: line graphs use
+     * largest-triangle-three-buckets, bar graphs keep the lowest and highest bar of every x range
+     * of width 1 / target. The result for the last target is cached.
+     *
+     * @param target the number of points that can be told apart, usually the width in pixels
+     * @return this if there are no more than target points (or the line isn't sorted by x), else a
+     * reduced copy
+     */
+    synchronized GraphData downsample(int target) {
+        if (target == downsampledTarget) return downsampled;
+        GraphData result = this;
+        if (target > 0 && xData.length > target) {
+            if (graphType == GraphType.BARGRAPH) result = new GraphData(this, minMaxIndices(target));
+            else if (xSorted && target >= 3) result = new GraphData(this, lttbIndices(target));
+        }
+        downsampled = result;
+        downsampledTarget = target;
+        return result;
+    }
+
+    /**
+     * Returns the points with scaled x values in [from, to], taken from the level of the
+     * {@link GraphPyramid} that has about 2 * target points in this range. A slice reaches half
+     * its range past both sides, so the slice of the last call is returned again as long as the
+     * view stays on the same level and inside it, as it does for most steps of a pan or a pinch.
+     * Series that aren't sorted by x can't be sliced, for them this is the same as
+     * {@link #downsample(int)}.
+     *
+     * @param target the number of points that can be told apart, usually the width in pixels
+     */
+    synchronized GraphData slice(float from, float to, int target) {
+        if (!xSorted) return downsample(target);
+        buildPyramid();
+        int level = pyramid.findLevel(from, to, 2 * target);
+        int start = pyramid.start(level, from), end = pyramid.end(level, to);
+        if (level != slicedLevel || start < slicedStart || end > slicedEnd) {
+            int margin = (end - start) / 2;
+            slicedLevel = level;
+            slicedStart = Math.max(0, start - margin);
+            slicedEnd = Math.min(pyramid.getLevelSize(level), end + margin);
+            sliced = new GraphData(this, pyramid.indices(level, slicedStart, slicedEnd));
+        }
+        return sliced;
+    }
+
+    /**
+     * Builds the {@link GraphPyramid} that {@link #slice(float, float, int)} reads from, in time
+     * proportional to the number of points. Graphs call this where they are created, so the first
+     * zoom doesn't build it on the UI thread.
+     */
+    synchronized void buildPyramid() {
+        if (xSorted && pyramid == null) pyramid = new GraphPyramid(xData, yData);
+    }
+
+    /**
+     * @return an estimate of the memory this graph holds: its value arrays, plus the downsampled
+     * copy, the slice and the pyramid once they were created
+     */
+    synchronized long getByteSize() {
+        long bytes = 4L * 4 * rawXData.length;
+        if (downsampled != null && downsampled != this) bytes += downsampled.getByteSize();
+        if (sliced != null && sliced != this && sliced != downsampled) bytes += sliced.getByteSize();
+        if (pyramid != null) bytes += pyramid.getByteSize();
+        return bytes;
+    }
+
+    private int[] minMaxIndices(int buckets) {
+        int[] min = new int[buckets], max = new int[buckets];
+        Arrays.fill(min, -1);
+        Arrays.fill(max, -1);
+        for (int i = 0; i < xData.length; i++) {
+            int b = Math.min(buckets - 1, (int) (xData[i] * buckets));
+            if (min[b] < 0 || yData[i] < yData[min[b]]) min[b] = i;
+            if (max[b] < 0 || yData[i] > yData[max[b]]) max[b] = i;
+        }
+        boolean[] keep = new boolean[xData.length];
+        int count = 0;
+        for (int b = 0; b < buckets; b++) {
+            if (min[b] < 0) continue;
+            if (!keep[min[b]]) count++;
+            if (!keep[max[b]] && max[b] != min[b]) count++;
+            keep[min[b]] = keep[max[b]] = true;
+        }
+        int[] indices = new int[count];
+        for (int i = 0, k = 0; i < keep.length; i++) if (keep[i]) indices[k++] = i;
+        return indices;
+    }
+
+    /**
+     * Largest-triangle-three-buckets: keeps the first and last point and from every bucket in
+     * between the point that spans the largest triangle with the previously kept point and the
+     * average of the next bucket.
+     */
+    private int[] lttbIndices(int target) {
+        int n = xData.length;
+        int[] indices = new int[target];
+        float bucketSize = (n - 2) / (float) (target - 2);
+        int a = 0;
+        indices[0] = 0;
+        for (int k = 0; k < target - 2; k++) {
+            int start = (int) (k * bucketSize) + 1, end = (int) ((k + 1) * bucketSize) + 1;
+            int nextStart = end, nextEnd = Math.min(n, (int) ((k + 2) * bucketSize) + 1);
+            float avgX = 0, avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += xData[i];
+                avgY += yData[i];
+            }
+            int nextCount = nextEnd - nextStart;
+            if (nextCount > 0) {
+                avgX /= nextCount;
+                avgY /= nextCount;
+            } else {
+                avgX = xData[n - 1];
+                avgY = yData[n - 1];
+            }
+            float maxArea = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                float area = Math.abs((xData[a] - avgX) * (yData[i] - yData[a]) - (xData[a] - xData[i]) * (avgY - yData[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+            indices[k + 1] = a = chosen;
+        }
+        indices[target - 1] = n - 1;
+        return indices;
+    }
+
+    /**
+     * Sets the shortest range of raw x values that zooming in should show, usually a few steps of
+     * the data's resolution
+     */
+    void setMinXSpan(float minXSpan) {
+        this.minXSpan = minXSpan;
+    }
+
+    /**
+     * @return the shortest range of scaled x values that zooming in should show: a few steps of the
+     * data's resolution, but not less than floats in [0, 1] can resolve on a screen
+     */
+    float getMinViewSpan() {
+        float span = xRange > 0 ? minXSpan / xRange : 1;
+        return Math.min(1, Math.max(MIN_VIEW_SPAN, span));
+    }
+
+    /**
+     * Scales x- and y-values to range [0,1]
+     */
+    void scale() {
+        if (rawXData.length == 0) {
+            xData = rawXData;
+            yData = rawYData;
+            return;
+        }
+        float minX, maxX, minY, maxY;
+        minX = maxX = rawXData[0];
+        minY = maxY = rawYData[0];
+        for (int i = 1; i < rawXData.length; i++) {
+            float x = rawXData[i], y = rawYData[i];
+            if (x < minX) minX = x;
+            else if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            else if (y > maxY) maxY = y;
+        }
+        xRange = maxX - minX;
+        xData = new float[rawXData.length];
+        yData = new float[rawYData.length];
+        for (int i = 0; i < xData.length; i++) {
+            xData[i] = map(rawXData[i], minX, maxX);
+            yData[i] = map(rawYData[i], minY, maxY);
+        }
+    }
+
+    private static boolean isSorted(float[] arr) {
+        for (int i = 1; i < arr.length; i++) {
+            if (arr[i] < arr[i - 1]) return false;
+        }
+        return true;
+    }
+
+    private float map(float val, float min, float max) {
+        if (max - min == 0) return 0;
+        return (val - min) / (max - min);
+    }
+
+
+    float[] getXData() {
+        return xData;
+    }
+
+    float[] getYData() {
+        return yData;
+    }
+
+    float[] getRawXData() {
+        return rawXData;
+    }
+
+    float[] getRawYData() {
+        return rawYData;
+    }
+
+    String getXLabel(int i) {
+        cacheLabels(i);
+        return xLabelCache[i % LABEL_CACHE_SIZE];
+    }
+
+    String getYLabel(int i) {
+        cacheLabels(i);
+        return yLabelCache[i % LABEL_CACHE_SIZE];
+    }
+
+    private void cacheLabels(int i) {
+        int slot = i % LABEL_CACHE_SIZE;
+        if (labelCacheIndices[slot] == i) return;
+        xLabelCache[slot] = xLabels.format(rawXData[i]);
+        yLabelCache[slot] = yLabels.format(rawYData[i]);
+        labelCacheIndices[slot] = i;
+    }
+
+    GraphType getGraphType() {
+        return graphType;
+    }
+
+    GraphMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return whether the x values are in ascending order
+     */
+    boolean isXSorted() {
+        return xSorted;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,163 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Finds the point of a {@link GraphData} nearest to a touch, measured in screen space. Bars of a
+ * {@link GraphType#BARGRAPH} count as vertical segments from the x-axis to their value. Series with
+ * sorted x values are searched with a binary search, others with a uniform grid of cells.
+ */
+class GraphHitTester {
+    private static final float CELL_SIZE = 48;
+
+    private final float[] xData, yData;
+    private final boolean bars;
+    private final float fromX, toX, fromY, toY;
+    private final boolean sorted;
+    //grid for unsorted series: the points of cell c are cellPoints[cellStarts[c], cellStarts[c + 1])
+    private int columns, rows;
+    private int[] cellStarts, cellPoints;
+
+    /**
+     * @param fromX screen x of the value 0, toX of 1
+     * @param fromY screen y of the value 0 (the x-axis), toY of 1
+     */
+    GraphHitTester(@NonNull GraphData graphData, float fromX, float toX, float fromY, float toY) {
+        xData = graphData.getXData();
+        yData = graphData.getYData();
+        bars = graphData.getGraphType() == GraphType.BARGRAPH;
+        sorted = graphData.isXSorted();
+        this.fromX = fromX;
+        this.toX = toX;
+        this.fromY = fromY;
+        this.toY = toY;
+        if (!sorted) buildGrid();
+    }
+
+    private float screenX(int i) {
+        return fromX + (toX - fromX) * xData[i];
+    }
+
+    private float screenY(int i) {
+        return fromY + (toY - fromY) * yData[i];
+    }
+
+    private float distanceSq(int i, float x, float y) {
+        float dx = screenX(i) - x, sy = screenY(i), dy;
+        if (bars) {
+            float top = Math.min(sy, fromY), bottom = Math.max(sy, fromY);
+            dy = y < top ? top - y : y > bottom ? y - bottom : 0;
+        } else dy = sy - y;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * @return the index of the nearest point, or -1 if there are no points
+     */
+    int findNearest(float x, float y) {
+        if (xData.length == 0) return -1;
+        return sorted ? findNearestSorted(x, y) : findNearestInGrid(x, y);
+    }
+
+    /**
+     * Walks outwards from the touch's x position until the horizontal distance alone exceeds the
+     * best distance found so far.
+     */
+    private int findNearestSorted(float x, float y) {
+        float value = (x - fromX) / (toX - fromX);
+        int lo = 0, hi = xData.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (xData[mid] < value) lo = mid + 1;
+            else hi = mid;
+        }
+        int best = -1;
+        float bestDist = Float.POSITIVE_INFINITY;
+        for (int i = lo; i < xData.length; i++) {
+            float dx = screenX(i) - x;
+            if (dx * dx > bestDist) break;
+            float d = distanceSq(i, x, y);
+            if (d < bestDist) {
+                bestDist = d;
+                best = i;
+            }
+        }
+        for (int i = lo - 1; i >= 0; i--) {
+            float dx = screenX(i) - x;
+            if (dx * dx > bestDist) break;
+            float d = distanceSq(i, x, y);
+            if (d <= bestDist) {  //prefer the earlier point on ties
+                bestDist = d;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private int column(float x) {
+        return clamp((int) ((x - Math.min(fromX, toX)) / CELL_SIZE), columns);
+    }
+
+    private int row(float y) {
+        return clamp((int) ((y - Math.min(fromY, toY)) / CELL_SIZE), rows);
+    }
+
+    private static int clamp(int v, int count) {
+        return v < 0 ? 0 : v >= count ? count - 1 : v;
+    }
+
+    private void buildGrid() {
+        columns = Math.max(1, (int) Math.ceil(Math.abs(toX - fromX) / CELL_SIZE) + 1);
+        rows = Math.max(1, (int) Math.ceil(Math.abs(toY - fromY) / CELL_SIZE) + 1);
+        cellStarts = new int[columns * rows + 1];
+        for (int pass = 0; pass < 2; pass++) {  //count, then fill
+            int[] next = pass == 0 ? null : Arrays.copyOf(cellStarts, cellStarts.length - 1);
+            for (int i = 0; i < xData.length; i++) {
+                int c = column(screenX(i)), r1 = row(screenY(i)), r2 = bars ? row(fromY) : r1;
+                for (int r = Math.min(r1, r2); r <= Math.max(r1, r2); r++) {
+                    int cell = r * columns + c;
+                    if (pass == 0) cellStarts[cell + 1]++;
+                    else cellPoints[next[cell]++] = i;
+                }
+            }
+            if (pass == 0) {
+                for (int cell = 0; cell < columns * rows; cell++) cellStarts[cell + 1] += cellStarts[cell];
+                cellPoints = new int[cellStarts[columns * rows]];
+            }
+        }
+    }
+
+    /**
+     * Searches rings of cells around the touch. A point in ring r + 1 is at least r cells away, so
+     * the search can stop once the best distance is smaller than that.
+     */
+    private int findNearestInGrid(float x, float y) {
+        int c0 = column(x), r0 = row(y);
+        int best = -1;
+        float bestDist = Float.POSITIVE_INFINITY;
+        int maxRing = Math.max(columns, rows);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            for (int r = r0 - ring; r <= r0 + ring; r++) {
+                if (r < 0 || r >= rows) continue;
+                boolean edgeRow = r == r0 - ring || r == r0 + ring;
+                for (int c = c0 - ring; c <= c0 + ring; c += edgeRow ? 1 : 2 * Math.max(ring, 1)) {
+                    if (c < 0 || c >= columns) continue;
+                    int cell = r * columns + c;
+                    for (int k = cellStarts[cell]; k < cellStarts[cell + 1]; k++) {
+                        int i = cellPoints[k];
+                        float d = distanceSq(i, x, y);
+                        if (d < bestDist || d == bestDist && i < best) {
+                            bestDist = d;
+                            best = i;
+                        }
+                    }
+                }
+            }
+            float reach = ring * CELL_SIZE;
+            if (best >= 0 && bestDist <= reach * reach) break;
+        }
+        return best;
+    }
+}
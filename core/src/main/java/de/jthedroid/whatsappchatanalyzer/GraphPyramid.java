@@ -0,0 +1,110 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Level-of-detail pyramid over a series sorted by x. Level 0 holds all points; every further level
+ * keeps the lowest and the highest point of each group of four points of the level below, so it has
+ * about half as many points and still shows every peak. Levels store indices into the series.
+ */
+class GraphPyramid {
+    private static final int GROUP_SIZE = 4;
+    private static final int MIN_LEVEL_SIZE = 64;
+
+    private final float[] xData, yData;
+    private final ArrayList<int[]> levels = new ArrayList<>();
+
+    /**
+     * @param xData x values in ascending order
+     */
+    GraphPyramid(@NonNull float[] xData, @NonNull float[] yData) {
+        this.xData = xData;
+        this.yData = yData;
+        int[] level = new int[xData.length];
+        for (int i = 0; i < level.length; i++) level[i] = i;
+        levels.add(level);
+        while (level.length > MIN_LEVEL_SIZE) {
+            level = reduce(level);
+            levels.add(level);
+        }
+    }
+
+    private int[] reduce(int[] level) {
+        int[] next = new int[(level.length + GROUP_SIZE - 1) / GROUP_SIZE * 2];
+        int count = 0;
+        for (int start = 0; start < level.length; start += GROUP_SIZE) {
+            int end = Math.min(level.length, start + GROUP_SIZE);
+            int min = start, max = start;
+            for (int i = start + 1; i < end; i++) {
+                if (yData[level[i]] < yData[level[min]]) min = i;
+                if (yData[level[i]] > yData[level[max]]) max = i;
+            }
+            next[count++] = level[Math.min(min, max)];
+            if (min != max) next[count++] = level[Math.max(min, max)];
+        }
+        return Arrays.copyOf(next, count);
+    }
+
+    /**
+     * @return the most detailed level that has at most maxPoints points in [from, to], or the
+     * coarsest level if none has
+     */
+    int findLevel(float from, float to, int maxPoints) {
+        int k = 0;
+        while (k < levels.size() - 1 && end(k, to) - start(k, from) > maxPoints) k++;
+        return k;
+    }
+
+    /**
+     * @return the position in level k of the nearest point before from, so lines continue to the
+     * left edge
+     */
+    int start(int k, float from) {
+        return Math.max(0, lowerBound(levels.get(k), from) - 1);
+    }
+
+    /**
+     * @return the position in level k after the nearest point after to, so lines continue to the
+     * right edge
+     */
+    int end(int k, float to) {
+        int[] level = levels.get(k);
+        int end = Math.min(level.length, lowerBound(level, to) + 1);
+        while (end < level.length && xData[level[end - 1]] <= to) end++;
+        return end;
+    }
+
+    int getLevelSize(int k) {
+        return levels.get(k).length;
+    }
+
+    /**
+     * @return the indices into the series of the points at positions [start, end) of level k
+     */
+    @NonNull
+    int[] indices(int k, int start, int end) {
+        return Arrays.copyOfRange(levels.get(k), start, end);
+    }
+
+    long getByteSize() {
+        long bytes = 0;
+        for (int[] level : levels) bytes += 4L * level.length;
+        return bytes;
+    }
+
+    /**
+     * @return the first position in level whose x value is not below x
+     */
+    private int lowerBound(int[] level, float x) {
+        int lo = 0, hi = level.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (xData[level[mid]] < x) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,246 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Space-saving sketch of the most frequent byte strings in a stream, with a fixed number of
+ * counters. When all counters are in use, a new key takes over the counter with the lowest count
+ * and inherits that count as its possible overestimation. Every key that occurs more often than
+ * total / capacity times is guaranteed to be tracked.
+ * <p>
+ * Keys that aren't tracked are first counted in a small table of hash buckets, and only take over
+ * a counter once their bucket count exceeds the lowest count (filtered space-saving). Without it,
+ * the rare keys of a long tail would keep replacing each other.
+ * <p>
+ * Counters are kept in a min-heap by count and found by an open addressing table over the key
+ * hashes. Key bytes are copied into per-counter buffers, which are reused when a counter is taken
+ * over, so adding keys doesn't allocate once the buffers are large enough.
+ */
+class HeavyHitters {
+    private static final int EMPTY = -1;
+
+    private final int capacity;
+    private int size = 0;
+    private long total = 0;
+    private final byte[][] keys;
+    private final int[] keyLengths, hashes;
+    private final long[] counts, errors;
+    private final int[] heap, heapPositions;  //heap of counters by count, and each counter's place in it
+    private final int[] slots;  //open addressing, holds counters
+    private final long[] buckets;  //counts of keys that aren't tracked, by hash
+
+    HeavyHitters(int capacity) {
+        this.capacity = capacity;
+        keys = new byte[capacity][];
+        keyLengths = new int[capacity];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+        errors = new long[capacity];
+        heap = new int[capacity];
+        heapPositions = new int[capacity];
+        slots = new int[Integer.highestOneBit(capacity * 2 - 1) * 2];
+        Arrays.fill(slots, EMPTY);
+        buckets = new long[slots.length * 2];
+    }
+
+    /**
+     * Counts key[0, length) count more times
+     *
+     * @param hash the hash of the key, see {@link TokenReader#hash(byte[], int)}
+     */
+    void add(@NonNull byte[] key, int length, int hash, long count) {
+        total += count;
+        int c = find(key, length, hash);
+        if (c != EMPTY) {
+            counts[c] += count;
+            siftDown(heapPositions[c]);
+            return;
+        }
+        long error = 0;
+        if (size < capacity) {
+            c = size++;
+            heap[c] = c;
+            heapPositions[c] = c;
+        } else {
+            int bucket = hash & (buckets.length - 1);
+            error = buckets[bucket];
+            if (error + count <= counts[heap[0]]) {
+                buckets[bucket] += count;
+                return;
+            }
+            c = heap[0];  //take over the counter with the lowest count
+            removeSlot(c);
+            //the evicted key may come back, its bucket keeps an upper bound of its count
+            int evictedBucket = hashes[c] & (buckets.length - 1);
+            buckets[evictedBucket] = Math.max(buckets[evictedBucket], counts[c]);
+        }
+        if (keys[c] == null || keys[c].length < length) keys[c] = new byte[Math.max(length, 16)];
+        System.arraycopy(key, 0, keys[c], 0, length);
+        keyLengths[c] = length;
+        hashes[c] = hash;
+        counts[c] = error + count;
+        errors[c] = error;
+        insertSlot(c);
+        siftUp(heapPositions[c]);
+        siftDown(heapPositions[c]);
+    }
+
+    /**
+     * Takes back one occurrence of key, if it is tracked
+     */
+    void remove(@NonNull byte[] key, int length, int hash) {
+        total--;
+        int c = find(key, length, hash);
+        if (c == EMPTY || counts[c] == 0) return;
+        counts[c]--;
+        if (errors[c] > counts[c]) errors[c] = counts[c];
+        siftUp(heapPositions[c]);
+    }
+
+    /**
+     * Adds the counts of other, which should have the same capacity. The result has the same
+     * guarantees as a sketch over both streams, with the errors of both added up.
+     */
+    void merge(@NonNull HeavyHitters other) {
+        if (other.buckets.length == buckets.length) {
+            for (int i = 0; i < buckets.length; i++) buckets[i] += other.buckets[i];
+        }
+        for (int c = 0; c < other.size; c++) {
+            add(other.keys[c], other.keyLengths[c], other.hashes[c], other.counts[c]);
+        }
+        total += other.total - sumCounts(other);
+    }
+
+    private static long sumCounts(HeavyHitters h) {
+        long sum = 0;
+        for (int c = 0; c < h.size; c++) sum += h.counts[c];
+        return sum;
+    }
+
+    private int find(byte[] key, int length, int hash) {
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int c = slots[slot];
+            if (c == EMPTY) return EMPTY;
+            if (hashes[c] == hash && keyEquals(c, key, length)) return c;
+        }
+    }
+
+    private boolean keyEquals(int c, byte[] key, int length) {
+        if (keyLengths[c] != length) return false;
+        byte[] k = keys[c];
+        for (int i = 0; i < length; i++) {
+            if (k[i] != key[i]) return false;
+        }
+        return true;
+    }
+
+    private void insertSlot(int c) {
+        int mask = slots.length - 1;
+        int slot = hashes[c] & mask;
+        while (slots[slot] != EMPTY) slot = (slot + 1) & mask;
+        slots[slot] = c;
+    }
+
+    /**
+     * Removes counter c from the table, moving later entries of its probe sequence back
+     */
+    private void removeSlot(int c) {
+        int mask = slots.length - 1;
+        int slot = hashes[c] & mask;
+        while (slots[slot] != c) slot = (slot + 1) & mask;
+        slots[slot] = EMPTY;
+        for (int next = (slot + 1) & mask; slots[next] != EMPTY; next = (next + 1) & mask) {
+            int moved = slots[next];
+            int home = hashes[moved] & mask;
+            //move the entry back if its home isn't between the hole and its place
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                slots[slot] = moved;
+                slots[next] = EMPTY;
+                slot = next;
+            }
+        }
+    }
+
+    private void siftUp(int pos) {
+        int c = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) / 2;
+            if (counts[heap[parent]] <= counts[c]) break;
+            place(heap[parent], pos);
+            pos = parent;
+        }
+        place(c, pos);
+    }
+
+    private void siftDown(int pos) {
+        int c = heap[pos];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) break;
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) child++;
+            if (counts[heap[child]] >= counts[c]) break;
+            place(heap[child], pos);
+            pos = child;
+        }
+        place(c, pos);
+    }
+
+    private void place(int c, int pos) {
+        heap[pos] = c;
+        heapPositions[c] = pos;
+    }
+
+    /**
+     * @return the counters of the at most k most frequent keys, most frequent first
+     */
+    @NonNull
+    int[] top(int k) {
+        Integer[] order = new Integer[size];
+        for (int c = 0; c < size; c++) order[c] = c;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(counts[b], counts[a]);
+            }
+        });
+        int n = Math.min(k, size);
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) result[i] = order[i];
+        return result;
+    }
+
+    /**
+     * @return the key of counter c
+     */
+    @NonNull
+    String getKey(int c) {
+        return ChatParser.decode(ByteBuffer.wrap(keys[c]), 0, keyLengths[c]);
+    }
+
+    /**
+     * @return the estimated count of counter c, which is at most {@link #getError(int)} too high
+     */
+    long getCount(int c) {
+        return counts[c];
+    }
+
+    long getError(int c) {
+        return errors[c];
+    }
+
+    /**
+     * @return the number of keys added, including those that aren't tracked
+     */
+    long getTotal() {
+        return total;
+    }
+
+    int size() {
+        return size;
+    }
+}
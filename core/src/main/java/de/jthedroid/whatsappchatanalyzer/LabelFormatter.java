@@ -0,0 +1,53 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+
+import java.text.DateFormat;
+import java.util.Date;
+
+/**
+ * Turns a raw value of a {@link GraphData} into the label shown when the point is tapped. Labels
+ * are only created on demand, so graphs don't have to keep a String per point.
+ */
+interface LabelFormatter {
+    @NonNull
+    String format(float value);
+
+    /**
+     * @param origin the time in milliseconds that the values are relative to
+     * @return a formatter for times in milliseconds since origin, showing the date
+     */
+    static LabelFormatter date(long origin) {
+        return new LabelFormatter() {
+            private DateFormat df;  //created on first use, on the thread that shows the labels
+
+            @NonNull
+            @Override
+            public String format(float value) {
+                if (df == null) df = DateFormat.getDateInstance();
+                return df.format(new Date(origin + (long) value));
+            }
+        };
+    }
+
+    /**
+     * @param origin the time in milliseconds that the values are relative to
+     * @return a formatter for times in milliseconds since origin, showing the date and time
+     */
+    static LabelFormatter dateTime(long origin) {
+        return new LabelFormatter() {
+            private DateFormat df;
+
+            @NonNull
+            @Override
+            public String format(float value) {
+                if (df == null) df = DateFormat.getDateTimeInstance();
+                return df.format(new Date(origin + (long) value));
+            }
+        };
+    }
+
+    static LabelFormatter count() {
+        return value -> "" + (int) value;
+    }
+}
@@ -0,0 +1,13 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Is told how loading a chat goes. Methods may be called from any thread, and the progress of the
+ * parser threads only every {@link LoadingProgress.Tracker#INTERVAL_MILLIS}.
+ */
+interface LoadingListener {
+    void onLoadingStage(@NonNull LoadingStage stage);
+
+    void onLoadingProgress(@NonNull LoadingProgress progress);
+}
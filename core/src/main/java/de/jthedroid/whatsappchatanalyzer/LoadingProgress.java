@@ -0,0 +1,86 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How far the parser has got through an export, published through
+ * {@link LoadingListener#onLoadingProgress(LoadingProgress)}
+ */
+class LoadingProgress {
+    final long bytes, totalBytes, messages, elapsedMillis;
+
+    LoadingProgress(long bytes, long totalBytes, long messages, long elapsedMillis) {
+        this.bytes = bytes;
+        this.totalBytes = totalBytes;
+        this.messages = messages;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return the parsed part of the export, between 0 and 1
+     */
+    float getFraction() {
+        return totalBytes == 0 ? 1 : (float) bytes / totalBytes;
+    }
+
+    /**
+     * @return the average throughput since parsing started
+     */
+    long getBytesPerSecond() {
+        return elapsedMillis == 0 ? 0 : bytes * 1000 / elapsedMillis;
+    }
+
+    /**
+     * @return the estimated time until the export is parsed, or -1 if it can't be estimated yet
+     */
+    long getEtaMillis() {
+        if (bytes == 0) return -1;
+        return (long) ((double) elapsedMillis * (totalBytes - bytes) / bytes);
+    }
+
+    /**
+     * Sums up the progress of the parser threads and posts it at most every
+     * {@link #INTERVAL_MILLIS}, so the UI isn't flooded with updates. Threads should only report
+     * every few kilobytes; reporting is lock free.
+     */
+    static class Tracker {
+        static final long INTERVAL_MILLIS = 100;
+        private static final long INTERVAL_NANOS = INTERVAL_MILLIS * 1000000;
+
+        private final long totalBytes, startNanos = System.nanoTime();
+        private final AtomicLong bytes = new AtomicLong(), messages = new AtomicLong();
+        private final AtomicLong lastPublished = new AtomicLong(startNanos - INTERVAL_NANOS);
+        private final LoadingListener target;
+
+        Tracker(long totalBytes, @NonNull LoadingListener target) {
+            this.totalBytes = totalBytes;
+            this.target = target;
+        }
+
+        /**
+         * Adds bytes parsed bytes and messages found messages
+         */
+        void add(long bytes, int messages) {
+            long b = this.bytes.addAndGet(bytes);
+            long m = this.messages.addAndGet(messages);
+            long now = System.nanoTime(), last = lastPublished.get();
+            //only the thread that wins the race publishes
+            if (now - last >= INTERVAL_NANOS && lastPublished.compareAndSet(last, now)) publish(b, m, now);
+        }
+
+        /**
+         * Publishes the final progress, whenever the last update was
+         */
+        void finish() {
+            long now = System.nanoTime();
+            lastPublished.set(now);
+            publish(bytes.get(), messages.get(), now);
+        }
+
+        private void publish(long b, long m, long now) {
+            target.onLoadingProgress(new LoadingProgress(b, totalBytes, m, (now - startNanos) / 1000000));
+        }
+    }
+}
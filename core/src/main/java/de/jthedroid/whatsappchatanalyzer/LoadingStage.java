@@ -0,0 +1,9 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+enum LoadingStage {
+    OPENING_FILE,
+    LOADING_FILE,
+    PROCESSING,
+    DONE,
+    ERROR
+}
@@ -0,0 +1,84 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Histogram of non-negative values with a fixed number of logarithmic buckets: every power of two
+ * is split into {@link #SUB_BUCKETS} buckets, so quantiles are accurate to about 6% whatever the
+ * number of values, and values below {@link #SUB_BUCKETS} are exact.
+ */
+class LogHistogram {
+    private static final int SUB_BUCKETS = 8, SUB_BITS = 3;
+    static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final int[] counts = new int[BUCKETS];
+    private long count = 0;
+
+    void add(long value) {
+        counts[bucket(value)]++;
+        count++;
+    }
+
+    /**
+     * Removes value, which must have been added before
+     */
+    void remove(long value) {
+        counts[bucket(value)]--;
+        count--;
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) Math.max(0, value);
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the smallest value of bucket b
+     */
+    private static long lowerBound(int b) {
+        if (b < SUB_BUCKETS) return b;
+        int exponent = b / SUB_BUCKETS + SUB_BITS - 1;
+        return (long) (SUB_BUCKETS + b % SUB_BUCKETS) << (exponent - SUB_BITS);
+    }
+
+    /**
+     * @param q between 0 and 1, 0.5 for the median
+     * @return the middle of the bucket that holds the q-quantile, or 0 if the histogram is empty
+     */
+    long getQuantile(double q) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank) {
+                long lower = lowerBound(b);
+                return b + 1 < BUCKETS ? lower + (lowerBound(b + 1) - 1 - lower) / 2 : lower;
+            }
+        }
+        return lowerBound(BUCKETS - 1);
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    void write(@NonNull DataOutput out) throws IOException {
+        for (int c : counts) out.writeInt(c);
+        out.writeLong(count);
+    }
+
+    /**
+     * Replaces the content of this histogram with one written by {@link #write(DataOutput)}
+     */
+    void read(@NonNull DataInput in) throws IOException {
+        for (int b = 0; b < BUCKETS; b++) counts[b] = in.readInt();
+        count = in.readLong();
+    }
+}
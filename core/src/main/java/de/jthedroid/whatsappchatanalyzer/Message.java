@@ -0,0 +1,46 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+
+/**
+ * A single message, created on demand from the {@link MessageStore}
+ */
+class Message {
+    private static final DateFormat df = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.SHORT, Locale.GERMANY);
+    private final long time;
+    private final String msg;
+    private final Sender sender;
+
+    Message(long time, String msg, Sender sender) {
+        this.time = time;
+        this.msg = msg;
+        this.sender = sender;
+    }
+
+    @Override
+    @NonNull
+    public String toString() {
+        return df.format(getDate()) + (sender == null ? "" : " : " + sender.getName()) + " : " + msg;
+    }
+
+    Date getDate() {
+        return new Date(time);
+    }
+
+    long getTime() {
+        return time;
+    }
+
+    public String getMsg() {
+        return msg;
+    }
+
+    public Sender getSender() {
+        return sender;
+    }
+}
@@ -0,0 +1,137 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Column store for messages: one primitive array per field instead of one object per message.
+ * Message texts stay in the UTF-8 encoded export and are only referenced by byte offsets.
+ */
+class MessageStore {
+    static final byte FLAG_SYSTEM = 1, FLAG_MULTILINE = 2;
+    static final int NO_SENDER = -1;
+
+    private final ByteBuffer text;
+    private int size = 0;
+    private long[] times;
+    private int[] senderIds, textStarts, textEnds;
+    private byte[] flags;
+
+    /**
+     * @param text the text arena, usually the mapped export
+     */
+    MessageStore(@NonNull ByteBuffer text, int capacity) {
+        this.text = text;
+        capacity = Math.max(capacity, 16);
+        times = new long[capacity];
+        senderIds = new int[capacity];
+        textStarts = new int[capacity];
+        textEnds = new int[capacity];
+        flags = new byte[capacity];
+    }
+
+    /**
+     * Wraps existing columns, which must all have the same length
+     */
+    MessageStore(@NonNull ByteBuffer text, @NonNull long[] times, @NonNull int[] senderIds, @NonNull int[] textStarts, @NonNull int[] textEnds, @NonNull byte[] flags) {
+        this.text = text;
+        this.times = times;
+        this.senderIds = senderIds;
+        this.textStarts = textStarts;
+        this.textEnds = textEnds;
+        this.flags = flags;
+        size = times.length;
+    }
+
+    /**
+     * @return the index of the new message
+     */
+    int add(long time, int senderId, int textStart, int textEnd, byte flags) {
+        ensureCapacity(size + 1);
+        times[size] = time;
+        senderIds[size] = senderId;
+        textStarts[size] = textStart;
+        textEnds[size] = textEnd;
+        this.flags[size] = flags;
+        return size++;
+    }
+
+    /**
+     * Appends all messages of other, which must use the same text arena.
+     *
+     * @param senderIdMap maps other's sender ids to the ids used in this store
+     */
+    void append(@NonNull MessageStore other, @NonNull int[] senderIdMap) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.times, 0, times, size, other.size);
+        System.arraycopy(other.textStarts, 0, textStarts, size, other.size);
+        System.arraycopy(other.textEnds, 0, textEnds, size, other.size);
+        System.arraycopy(other.flags, 0, flags, size, other.size);
+        for (int i = 0; i < other.size; i++) {
+            int id = other.senderIds[i];
+            senderIds[size + i] = id == NO_SENDER ? NO_SENDER : senderIdMap[id];
+        }
+        size += other.size;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= times.length) return;
+        resize(Math.max(capacity, times.length + (times.length >> 1)));
+    }
+
+    /**
+     * Removes all messages from index size on
+     */
+    void truncate(int size) {
+        this.size = Math.min(this.size, size);
+    }
+
+    void trimToSize() {
+        if (size < times.length) resize(size);
+    }
+
+    private void resize(int capacity) {
+        times = Arrays.copyOf(times, capacity);
+        senderIds = Arrays.copyOf(senderIds, capacity);
+        textStarts = Arrays.copyOf(textStarts, capacity);
+        textEnds = Arrays.copyOf(textEnds, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getTime(int i) {
+        return times[i];
+    }
+
+    int getSenderId(int i) {
+        return senderIds[i];
+    }
+
+    byte getFlags(int i) {
+        return flags[i];
+    }
+
+    /**
+     * Decodes the text of message i, the result is not cached
+     */
+    String getText(int i) {
+        return ChatParser.decode(text, textStarts[i], textEnds[i] - textStarts[i]);
+    }
+
+    ByteBuffer getTextArena() {
+        return text;
+    }
+
+    int getTextStart(int i) {
+        return textStarts[i];
+    }
+
+    int getTextEnd(int i) {
+        return textEnds[i];
+    }
+}
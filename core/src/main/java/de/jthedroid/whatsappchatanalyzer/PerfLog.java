@@ -0,0 +1,258 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Records how long the stages of loading a chat, building graphs and rendering them take. Every
+ * stage is a {@link Span}, which is also a section of the platform's {@link Tracer}, so on Android
+ * it shows up in systrace and Perfetto. The last {@link #MAX_RECORDS} spans are kept, together with
+ * a summary per stage, and shown on the diagnostics screen.
+ * <p>
+ * Spans are meant for coarse stages, not for inner loops: starting and ending one costs about as
+ * much as a few small allocations.
+ */
+class PerfLog {
+    static final int MAX_RECORDS = 256;
+    private static final PerfLog instance = new PerfLog();
+    private static volatile Tracer tracer = new Tracer() {
+        @Override
+        public void beginSection(@NonNull String name) {
+        }
+
+        @Override
+        public void endSection() {
+        }
+
+        @Override
+        public long getAllocatedBytes() {
+            return -1;
+        }
+    };
+
+    private final ArrayDeque<Record> records = new ArrayDeque<>(MAX_RECORDS);
+    private final LinkedHashMap<String, Summary> summaries = new LinkedHashMap<>();
+
+    private PerfLog() {
+    }
+
+    static PerfLog getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts a span on the calling thread, which must also end it
+     */
+    @NonNull
+    static Span begin(@NonNull String stage) {
+        return new Span(stage);
+    }
+
+    /**
+     * Records a stage that ran in pieces, for example one per chunk on several threads, as a single
+     * span instead of one per piece, which would push the other spans out of the log
+     *
+     * @param nanos the summed up time of the pieces
+     * @param count the summed up number of items of the pieces
+     */
+    static void record(@NonNull String stage, long startMillis, long nanos, long count) {
+        instance.add(new Record(stage, Thread.currentThread().getName(), startMillis, nanos, count, -1));
+    }
+
+    /**
+     * Sets where spans are traced and allocations are counted, by default nowhere
+     */
+    static void setTracer(@NonNull Tracer tracer) {
+        PerfLog.tracer = tracer;
+    }
+
+    private synchronized void add(Record record) {
+        if (records.size() == MAX_RECORDS) records.removeFirst();
+        records.addLast(record);
+        Summary summary = summaries.get(record.stage);
+        if (summary == null) summaries.put(record.stage, summary = new Summary(record.stage));
+        summary.add(record);
+    }
+
+    synchronized void clear() {
+        records.clear();
+        summaries.clear();
+    }
+
+    /**
+     * @return the recorded spans, oldest first
+     */
+    @NonNull
+    synchronized ArrayList<Record> getRecords() {
+        return new ArrayList<>(records);
+    }
+
+    /**
+     * @return a summary per stage, in order of the first span of each stage
+     */
+    @NonNull
+    synchronized ArrayList<Summary> getSummaries() {
+        ArrayList<Summary> result = new ArrayList<>(summaries.size());
+        for (Summary s : summaries.values()) result.add(s.copy());
+        return result;
+    }
+
+    /**
+     * @return the summaries and recorded spans as a JSON object, to be attached to bug reports
+     */
+    @NonNull
+    String toJson() {
+        return toJson(Collections.<String, Map<String, Long>>emptyMap());
+    }
+
+    /**
+     * @param counters further objects to add, like the statistics of a cache, by name
+     * @return the summaries, recorded spans and counters as a JSON object
+     */
+    @NonNull
+    String toJson(@NonNull Map<String, ? extends Map<String, Long>> counters) {
+        ArrayList<Summary> summaries = getSummaries();
+        ArrayList<Record> records = getRecords();
+        Runtime runtime = Runtime.getRuntime();
+        StringBuilder s = new StringBuilder();
+        s.append("{\n  \"processors\": ").append(runtime.availableProcessors())
+                .append(",\n  \"maxMemory\": ").append(runtime.maxMemory());
+        for (Map.Entry<String, ? extends Map<String, Long>> group : counters.entrySet()) {
+            s.append(",\n  ").append(quote(group.getKey())).append(": {");
+            String separator = "";
+            for (Map.Entry<String, Long> e : group.getValue().entrySet()) {
+                s.append(separator).append(quote(e.getKey())).append(": ").append(e.getValue());
+                separator = ", ";
+            }
+            s.append('}');
+        }
+        s.append(",\n  \"stages\": [");
+        for (int i = 0; i < summaries.size(); i++) {
+            Summary sum = summaries.get(i);
+            s.append(i == 0 ? "\n    " : ",\n    ").append("{\"stage\": ").append(quote(sum.stage))
+                    .append(", \"calls\": ").append(sum.calls)
+                    .append(", \"totalNanos\": ").append(sum.totalNanos)
+                    .append(", \"maxNanos\": ").append(sum.maxNanos)
+                    .append(", \"count\": ").append(sum.count)
+                    .append(", \"allocBytes\": ").append(sum.allocBytes).append('}');
+        }
+        s.append("\n  ],\n  \"spans\": [");
+        for (int i = 0; i < records.size(); i++) {
+            Record r = records.get(i);
+            s.append(i == 0 ? "\n    " : ",\n    ").append("{\"stage\": ").append(quote(r.stage))
+                    .append(", \"thread\": ").append(quote(r.thread))
+                    .append(", \"startMillis\": ").append(r.startMillis)
+                    .append(", \"nanos\": ").append(r.nanos)
+                    .append(", \"count\": ").append(r.count)
+                    .append(", \"allocBytes\": ").append(r.allocBytes).append('}');
+        }
+        return s.append("\n  ]\n}\n").toString();
+    }
+
+    private static String quote(String text) {
+        StringBuilder s = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') s.append('\\').append(c);
+            else if (c < 0x20) s.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            else s.append(c);
+        }
+        return s.append('"').toString();
+    }
+
+    /**
+     * The platform's tracing, such as android.os.Trace
+     */
+    interface Tracer {
+        /**
+         * Starts a section on the calling thread, sections of a thread are nested
+         */
+        void beginSection(@NonNull String name);
+
+        void endSection();
+
+        /**
+         * @return the bytes allocated by the whole process so far, or -1 if they aren't known
+         */
+        long getAllocatedBytes();
+    }
+
+    /**
+     * A running stage. The number of items it processed can be set in {@link #count} before it
+     * ends.
+     */
+    static class Span {
+        private final String stage;
+        private final long startMillis = System.currentTimeMillis(), startNanos, startAlloc;
+        long count = 0;
+
+        private Span(String stage) {
+            this.stage = stage;
+            tracer.beginSection(stage);
+            startAlloc = tracer.getAllocatedBytes();
+            startNanos = System.nanoTime();
+        }
+
+        void end() {
+            long nanos = System.nanoTime() - startNanos;
+            long alloc = startAlloc < 0 ? -1 : tracer.getAllocatedBytes() - startAlloc;
+            tracer.endSection();
+            instance.add(new Record(stage, Thread.currentThread().getName(), startMillis, nanos, count, alloc));
+        }
+    }
+
+    /**
+     * A finished span. allocBytes counts the allocations of all threads while the span ran, or is
+     * -1 if they aren't known.
+     */
+    static class Record {
+        final String stage, thread;
+        final long startMillis, nanos, count, allocBytes;
+
+        Record(String stage, String thread, long startMillis, long nanos, long count, long allocBytes) {
+            this.stage = stage;
+            this.thread = thread;
+            this.startMillis = startMillis;
+            this.nanos = nanos;
+            this.count = count;
+            this.allocBytes = allocBytes;
+        }
+    }
+
+    /**
+     * All spans of a stage. allocBytes is -1 if none of them knows its allocations.
+     */
+    static class Summary {
+        final String stage;
+        int calls;
+        long totalNanos, maxNanos, count, allocBytes = -1;
+
+        Summary(String stage) {
+            this.stage = stage;
+        }
+
+        private void add(Record r) {
+            calls++;
+            totalNanos += r.nanos;
+            maxNanos = Math.max(maxNanos, r.nanos);
+            count += r.count;
+            if (r.allocBytes >= 0) allocBytes = Math.max(0, allocBytes) + r.allocBytes;
+        }
+
+        private Summary copy() {
+            Summary s = new Summary(stage);
+            s.calls = calls;
+            s.totalNanos = totalNanos;
+            s.maxNanos = maxNanos;
+            s.count = count;
+            s.allocBytes = allocBytes;
+            return s;
+        }
+    }
+}
@@ -0,0 +1,521 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Inverted index over the message texts. Texts are split into words by a {@link TokenReader}
+ * straight from the UTF-8 bytes of the export. Every distinct token
+ * has a posting list of the messages that contain it, stored as varint encoded gaps between message
+ * indices in one byte array, followed by the positions of the token in these messages for phrase
+ * queries.
+ * <p>
+ * Queries are made of words, which must all occur in a message. A word ending in * matches every
+ * token it is a prefix of, words in double quotes must occur one after another.
+ */
+class SearchIndex {
+    private static final int EMPTY = -1;
+
+    private final MessageStore messages;
+    private int termCount = 0;
+    private byte[] termArena = new byte[1 << 12];
+    private int[] termStarts = new int[1025];  //term id has the bytes termStarts[id] to termStarts[id + 1]
+    private int[] hashes = new int[1024];
+    private int[] slots = new int[2048];  //open addressing, holds term ids
+    private int[] sortedTerms;  //term ids in byte order of their terms
+    private byte[] postings;
+    private int[] postingStarts;  //the postings of term id are postingStarts[id] to postingStarts[id + 1]
+    private int[] docCounts;
+    //for every message of a posting list, the token positions of the term in the message, as
+    //varint gaps (the first one plus one) ended by 0
+    private byte[] positions;
+    private int[] positionStarts;
+
+    SearchIndex(@NonNull MessageStore messages) {
+        this.messages = messages;
+        Arrays.fill(slots, EMPTY);
+        build();
+    }
+
+    private void build() {
+        //postings are first collected per term and packed into one array at the end
+        byte[][] termPostings = new byte[1024][], termPositions = new byte[1024][];
+        int[] sizes = new int[1024], positionSizes = new int[1024], lastDocs = new int[1024], lastPositions = new int[1024];
+        docCounts = new int[1024];
+        TokenReader tokenizer = new TokenReader(false);
+        ByteBuffer text = messages.getTextArena();
+        for (int m = 0; m < messages.size(); m++) {
+            tokenizer.reset(text, messages.getTextStart(m), messages.getTextEnd(m));
+            for (int position = 0; tokenizer.next(); position++) {
+                int id = find(tokenizer.token, tokenizer.length, tokenizer.hash);
+                if (id == EMPTY) {
+                    id = add(tokenizer.token, tokenizer.length, tokenizer.hash);
+                    if (id == termPostings.length) {
+                        termPostings = Arrays.copyOf(termPostings, id * 2);
+                        sizes = Arrays.copyOf(sizes, id * 2);
+                        lastDocs = Arrays.copyOf(lastDocs, id * 2);
+                        docCounts = Arrays.copyOf(docCounts, id * 2);
+                        termPositions = Arrays.copyOf(termPositions, id * 2);
+                        positionSizes = Arrays.copyOf(positionSizes, id * 2);
+                        lastPositions = Arrays.copyOf(lastPositions, id * 2);
+                    }
+                    termPostings[id] = new byte[4];
+                    termPositions[id] = new byte[4];
+                    lastDocs[id] = -1;
+                }
+                byte[] pp = termPositions[id];
+                if (positionSizes[id] + 10 > pp.length) pp = termPositions[id] = Arrays.copyOf(pp, pp.length * 2);
+                if (lastDocs[id] != m) {
+                    if (lastDocs[id] >= 0) pp[positionSizes[id]++] = 0;  //ends the positions of the last message
+                    byte[] p = termPostings[id];
+                    if (sizes[id] + 5 > p.length) p = termPostings[id] = Arrays.copyOf(p, p.length * 2);
+                    sizes[id] = writeVarint(p, sizes[id], m - lastDocs[id]);
+                    lastDocs[id] = m;
+                    docCounts[id]++;
+                    lastPositions[id] = -1;
+                }
+                positionSizes[id] = writeVarint(pp, positionSizes[id], position - lastPositions[id]);
+                lastPositions[id] = position;
+            }
+        }
+        int total = 0, totalPositions = 0;
+        for (int id = 0; id < termCount; id++) {
+            total += sizes[id];
+            totalPositions += positionSizes[id] + 1;
+        }
+        postings = new byte[total];
+        postingStarts = new int[termCount + 1];
+        positions = new byte[totalPositions];
+        positionStarts = new int[termCount + 1];
+        for (int id = 0; id < termCount; id++) {
+            System.arraycopy(termPostings[id], 0, postings, postingStarts[id], sizes[id]);
+            termPostings[id] = null;
+            postingStarts[id + 1] = postingStarts[id] + sizes[id];
+            System.arraycopy(termPositions[id], 0, positions, positionStarts[id], positionSizes[id]);
+            termPositions[id] = null;
+            positionStarts[id + 1] = positionStarts[id] + positionSizes[id] + 1;  //the array is 0, so the last message is ended
+        }
+        docCounts = Arrays.copyOf(docCounts, termCount);
+        termArena = Arrays.copyOf(termArena, termStarts[termCount]);
+        sortedTerms = sortTerms();
+    }
+
+    private static int writeVarint(byte[] b, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            b[pos++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        b[pos++] = (byte) value;
+        return pos;
+    }
+
+    private int find(byte[] token, int length, int hash) {
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (id == EMPTY) return EMPTY;
+            if (hashes[id] == hash && termEquals(id, token, length)) return id;
+        }
+    }
+
+    private int add(byte[] token, int length, int hash) {
+        if (termCount == hashes.length) {
+            hashes = Arrays.copyOf(hashes, termCount * 2);
+            termStarts = Arrays.copyOf(termStarts, termCount * 2 + 1);
+        }
+        int start = termStarts[termCount];
+        if (start + length > termArena.length) termArena = Arrays.copyOf(termArena, Math.max(termArena.length * 2, start + length));
+        System.arraycopy(token, 0, termArena, start, length);
+        int id = termCount++;
+        termStarts[termCount] = start + length;
+        hashes[id] = hash;
+        if (termCount * 2 > slots.length) {
+            slots = new int[slots.length * 2];
+            Arrays.fill(slots, EMPTY);
+            for (int i = 0; i < termCount; i++) insertSlot(i);
+        } else insertSlot(id);
+        return id;
+    }
+
+    private void insertSlot(int id) {
+        int mask = slots.length - 1;
+        int slot = hashes[id] & mask;
+        while (slots[slot] != EMPTY) slot = (slot + 1) & mask;
+        slots[slot] = id;
+    }
+
+    private boolean termEquals(int id, byte[] token, int length) {
+        int start = termStarts[id];
+        if (termStarts[id + 1] - start != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (termArena[start + i] != token[i]) return false;
+        }
+        return true;
+    }
+
+    private boolean startsWith(int id, byte[] prefix) {
+        int start = termStarts[id];
+        if (termStarts[id + 1] - start < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (termArena[start + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private int compareTerms(int a, int b) {
+        int aStart = termStarts[a], aLength = termStarts[a + 1] - aStart;
+        int bStart = termStarts[b], bLength = termStarts[b + 1] - bStart;
+        for (int i = 0; i < Math.min(aLength, bLength); i++) {
+            int diff = (termArena[aStart + i] & 0xFF) - (termArena[bStart + i] & 0xFF);
+            if (diff != 0) return diff;
+        }
+        return aLength - bLength;
+    }
+
+    private int[] sortTerms() {
+        int n = termCount;
+        int[] a = new int[n], b = new int[n];
+        for (int i = 0; i < n; i++) a[i] = i;
+        for (int width = 1; width < n; width *= 2) {  //bottom-up merge sort
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n), hi = Math.min(lo + 2 * width, n);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) b[k++] = compareTerms(a[j], a[i]) < 0 ? a[j++] : a[i++];
+                while (i < mid) b[k++] = a[i++];
+                while (j < hi) b[k++] = a[j++];
+            }
+            int[] tmp = a;
+            a = b;
+            b = tmp;
+        }
+        return a;
+    }
+
+    int getTermCount() {
+        return termCount;
+    }
+
+    /**
+     * @return the indices of the messages that match query, in ascending order
+     */
+    @NonNull
+    int[] search(@NonNull Query query) {
+        int[] result = null;
+        for (Term[] clause : query.clauses) {
+            int[] matches = clause.length > 1 ? matchPhrase(clause) : postings(clause[0]);
+            result = result == null ? matches : intersect(result, matches);
+            if (result.length == 0) break;
+        }
+        return result == null ? new int[0] : result;
+    }
+
+    private int[] matchPhrase(Term[] phrase) {
+        int[] ids = new int[phrase.length];
+        for (int i = 0; i < phrase.length; i++) {
+            Term term = phrase[i];
+            ids[i] = term.prefix ? EMPTY : find(term.bytes, term.bytes.length, TokenReader.hash(term.bytes, term.bytes.length));
+            if (ids[i] == EMPTY && !term.prefix) return new int[0];
+        }
+        int[][] docs = new int[phrase.length][];
+        int[] candidates = null;
+        for (int i = 0; i < phrase.length; i++) {
+            docs[i] = postings(phrase[i]);
+            candidates = candidates == null ? docs[i] : intersect(candidates, docs[i]);
+            if (candidates.length == 0) return candidates;
+        }
+        for (int id : ids) {
+            //a prefix matches several terms with separate positions, so check the texts instead
+            if (id == EMPTY) return filterPhrase(candidates, phrase);
+        }
+        int[] result = new int[candidates.length];
+        int count = 0;
+        int[] docIndex = new int[phrase.length], positionIndex = new int[phrase.length];
+        for (int i = 0; i < phrase.length; i++) positionIndex[i] = positionStarts[ids[i]];
+        int[] starts = new int[16], next = new int[16];
+        for (int m : candidates) {
+            int startCount = 0;
+            for (int i = 0; i < phrase.length; i++) {
+                //skip the positions of the messages before m
+                while (docs[i][docIndex[i]] < m) {
+                    while (positions[positionIndex[i]] != 0) positionIndex[i]++;
+                    positionIndex[i]++;
+                    docIndex[i]++;
+                }
+                int nextCount = 0;
+                for (int position = -1; ; ) {
+                    int gap = 0;
+                    for (int shift = 0; ; shift += 7) {
+                        byte b = positions[positionIndex[i]++];
+                        gap |= (b & 0x7F) << shift;
+                        if (b >= 0) break;
+                    }
+                    if (gap == 0) break;
+                    position += gap;
+                    if (nextCount == next.length) next = Arrays.copyOf(next, nextCount * 2);
+                    next[nextCount++] = position - i;  //the start of the phrase if the term is at i
+                }
+                docIndex[i]++;
+                if (i == 0) {
+                    int[] tmp = starts;
+                    starts = next;
+                    next = tmp;
+                    startCount = nextCount;
+                } else startCount = intersect(starts, startCount, next, nextCount);
+            }
+            if (startCount > 0) result[count++] = m;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Keeps the values of a[0, aCount) that are also in b[0, bCount), both sorted
+     *
+     * @return the number of values kept
+     */
+    private static int intersect(int[] a, int aCount, int[] b, int bCount) {
+        int i = 0, j = 0, k = 0;
+        while (i < aCount && j < bCount) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                a[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return k;
+    }
+
+    private int[] postings(Term term) {
+        if (!term.prefix) {
+            int id = find(term.bytes, term.bytes.length, TokenReader.hash(term.bytes, term.bytes.length));
+            return id == EMPTY ? new int[0] : decode(id);
+        }
+        int first = lowerBound(term.bytes), last = first;
+        while (last < termCount && startsWith(sortedTerms[last], term.bytes)) last++;
+        if (last - first == 1) return decode(sortedTerms[first]);
+        //union of several posting lists via a bit set over all messages
+        long[] bits = new long[(messages.size() + 63) >>> 6];
+        int count = 0;
+        for (int i = first; i < last; i++) {
+            int id = sortedTerms[i];
+            int doc = -1;
+            for (int pos = postingStarts[id]; pos < postingStarts[id + 1]; ) {
+                int delta = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = postings[pos++];
+                    delta |= (b & 0x7F) << shift;
+                    if (b >= 0) break;
+                }
+                doc += delta;
+                long mask = 1L << doc;
+                if ((bits[doc >>> 6] & mask) == 0) {
+                    bits[doc >>> 6] |= mask;
+                    count++;
+                }
+            }
+        }
+        int[] result = new int[count];
+        int k = 0;
+        for (int w = 0; w < bits.length; w++) {
+            for (long word = bits[w]; word != 0; word &= word - 1) {
+                result[k++] = (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the first position in sortedTerms whose term is not smaller than prefix
+     */
+    private int lowerBound(byte[] prefix) {
+        int lo = 0, hi = termCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int start = termStarts[sortedTerms[mid]];
+            int length = termStarts[sortedTerms[mid] + 1] - start;
+            int cmp = 0;
+            for (int i = 0; i < Math.min(length, prefix.length) && cmp == 0; i++) {
+                cmp = (termArena[start + i] & 0xFF) - (prefix[i] & 0xFF);
+            }
+            if (cmp == 0) cmp = length - prefix.length;
+            if (cmp < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int[] decode(int id) {
+        int[] docs = new int[docCounts[id]];
+        int doc = -1;
+        int pos = postingStarts[id];
+        for (int i = 0; i < docs.length; i++) {
+            int delta = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = postings[pos++];
+                delta |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            docs[i] = doc += delta;
+        }
+        return docs;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                result[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, k);
+    }
+
+    /**
+     * @return the candidates in which the terms of phrase occur one after another
+     */
+    private int[] filterPhrase(int[] candidates, Term[] phrase) {
+        int[] result = new int[candidates.length];
+        int k = 0;
+        TokenReader tokenizer = new TokenReader(false);
+        byte[][] window = new byte[phrase.length][];  //the last tokens of the message, as a ring
+        int[] lengths = new int[phrase.length];
+        for (int m : candidates) {
+            tokenizer.reset(messages.getTextArena(), messages.getTextStart(m), messages.getTextEnd(m));
+            int seen = 0;
+            while (tokenizer.next()) {
+                int slot = seen++ % phrase.length;
+                if (window[slot] == null || window[slot].length < tokenizer.length) window[slot] = new byte[tokenizer.token.length];
+                System.arraycopy(tokenizer.token, 0, window[slot], 0, tokenizer.length);
+                lengths[slot] = tokenizer.length;
+                if (seen >= phrase.length && windowMatches(window, lengths, seen, phrase)) {
+                    result[k++] = m;
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(result, k);
+    }
+
+    private static boolean windowMatches(byte[][] window, int[] lengths, int seen, Term[] phrase) {
+        for (int i = 0; i < phrase.length; i++) {
+            int slot = (seen - phrase.length + i) % phrase.length;
+            if (!phrase[i].matches(window[slot], lengths[slot])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * A normalized token of a query
+     */
+    static class Term {
+        final String text;
+        final byte[] bytes;
+        final boolean prefix;
+
+        Term(String text, boolean prefix) {
+            this.text = text;
+            this.bytes = text.getBytes(StandardCharsets.UTF_8);
+            this.prefix = prefix;
+        }
+
+        boolean matches(byte[] token, int length) {
+            if (prefix ? length < bytes.length : length != bytes.length) return false;
+            for (int i = 0; i < bytes.length; i++) {
+                if (token[i] != bytes[i]) return false;
+            }
+            return true;
+        }
+
+        boolean matches(String token) {
+            return prefix ? token.startsWith(text) : token.equals(text);
+        }
+    }
+
+    /**
+     * A parsed query: every clause must match, a clause of several terms is a phrase
+     */
+    static class Query {
+        final ArrayList<Term[]> clauses = new ArrayList<>();
+
+        /**
+         * Parses words, words ending in * and phrases in double quotes. Words are normalized the
+         * same way as the indexed texts.
+         */
+        Query(@NonNull String query) {
+            boolean quoted = false;
+            ArrayList<Term> phrase = new ArrayList<>();
+            StringBuilder token = new StringBuilder();
+            for (int i = 0; i <= query.length(); ) {
+                int cp = i < query.length() ? query.codePointAt(i) : -1;
+                i += cp < 0 ? 1 : Character.charCount(cp);
+                if (cp >= 0 && TokenReader.isWordChar(cp)) {
+                    token.appendCodePoint(Character.toLowerCase(cp));
+                    continue;
+                }
+                if (token.length() > 0) {
+                    Term term = new Term(token.toString(), cp == '*');
+                    if (quoted) phrase.add(term);
+                    else clauses.add(new Term[]{term});
+                    token.setLength(0);
+                }
+                if (cp == '"' || cp < 0 && quoted) {
+                    if (quoted && !phrase.isEmpty()) clauses.add(phrase.toArray(new Term[0]));
+                    phrase.clear();
+                    quoted = !quoted;
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return clauses.isEmpty();
+        }
+
+        /**
+         * Finds the tokens of text that match a term of this query, for highlighting
+         *
+         * @return the start and end char index of each match, one after another
+         */
+        @NonNull
+        int[] findMatches(@NonNull String text) {
+            int[] ranges = new int[8];
+            int count = 0;
+            StringBuilder token = new StringBuilder();
+            int start = 0;
+            for (int i = 0; i <= text.length(); ) {
+                int cp = i < text.length() ? text.codePointAt(i) : -1;
+                if (cp >= 0 && TokenReader.isWordChar(cp)) {
+                    if (token.length() == 0) start = i;
+                    token.appendCodePoint(Character.toLowerCase(cp));
+                } else if (token.length() > 0) {
+                    if (matchesAnyTerm(token.toString())) {
+                        if (count + 2 > ranges.length) ranges = Arrays.copyOf(ranges, ranges.length * 2);
+                        ranges[count++] = start;
+                        ranges[count++] = i;
+                    }
+                    token.setLength(0);
+                }
+                i += cp < 0 ? 1 : Character.charCount(cp);
+            }
+            return Arrays.copyOf(ranges, count);
+        }
+
+        private boolean matchesAnyTerm(String token) {
+            for (Term[] clause : clauses) {
+                for (Term term : clause) {
+                    if (term.matches(token)) return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+/**
+ * View of one entry of a {@link SenderTable}
+ */
+public class Sender {
+    private final SenderTable table;
+    private final int id;
+
+    Sender(SenderTable table, int id) {
+        this.table = table;
+        this.id = id;
+    }
+
+    String getName() {
+        return table.getName(id);
+    }
+
+    int getId() {
+        return id;
+    }
+
+    int getMsgCount() {
+        return table.getMsgCount(id);
+    }
+
+    /**
+     * @return the index in {@link Chat#getMessages()} of the n-th message of this sender
+     */
+    int getMessageIndex(int n) {
+        return table.getMessageIndex(id, n);
+    }
+}
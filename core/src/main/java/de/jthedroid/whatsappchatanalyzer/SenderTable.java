@@ -0,0 +1,176 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Dictionary of sender names. Names are interned straight from the UTF-8 bytes of the export and
+ * get dense int ids in order of their first appearance; per-sender data is kept in arrays indexed
+ * by these ids.
+ */
+class SenderTable {
+    private static final int EMPTY = -1;
+
+    private int size = 0;
+    private byte[][] nameBytes = new byte[8][];
+    private int[] hashes = new int[8];
+    private String[] names = new String[8];
+    private int[] counts = new int[8];
+    private int[][] messageIndices = new int[8][];
+    private int[] slots = new int[16];  //open addressing, holds ids
+
+    SenderTable() {
+        Arrays.fill(slots, EMPTY);
+    }
+
+    /**
+     * Looks up the name stored in data[start, end), adding it if it is new. Only a new name
+     * allocates memory.
+     *
+     * @return the id of the name
+     */
+    int intern(@NonNull ByteBuffer data, int start, int end) {
+        int hash = hash(data, start, end);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (id == EMPTY) break;
+            if (hashes[id] == hash && equals(nameBytes[id], data, start, end)) return id;
+        }
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) bytes[i - start] = data.get(i);
+        return add(bytes, hash);
+    }
+
+    /**
+     * @return the id of the name, or {@link MessageStore#NO_SENDER} if it isn't in the table
+     */
+    int find(@NonNull String name) {
+        ByteBuffer b = ByteBuffer.wrap(name.getBytes(StandardCharsets.UTF_8));
+        int hash = hash(b, 0, b.limit());
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (id == EMPTY) return MessageStore.NO_SENDER;
+            if (hashes[id] == hash && equals(nameBytes[id], b, 0, b.limit())) return id;
+        }
+    }
+
+    /**
+     * Interns all names of other in id order. As other's ids are in order of first appearance,
+     * merging tables in input order keeps the ids in order of first appearance as well.
+     *
+     * @return a map from other's ids to ids in this table
+     */
+    int[] merge(@NonNull SenderTable other) {
+        int[] map = new int[other.size];
+        for (int i = 0; i < other.size; i++) {
+            ByteBuffer b = ByteBuffer.wrap(other.nameBytes[i]);
+            map[i] = intern(b, 0, b.limit());
+        }
+        return map;
+    }
+
+    private int add(byte[] bytes, int hash) {
+        if (size == nameBytes.length) {
+            int capacity = size * 2;
+            nameBytes = Arrays.copyOf(nameBytes, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            names = Arrays.copyOf(names, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            messageIndices = Arrays.copyOf(messageIndices, capacity);
+        }
+        int id = size++;
+        nameBytes[id] = bytes;
+        hashes[id] = hash;
+        if (size * 2 > slots.length) rehash(slots.length * 2);
+        else insertSlot(id);
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        for (int id = 0; id < size; id++) insertSlot(id);
+    }
+
+    private void insertSlot(int id) {
+        int mask = slots.length - 1;
+        int slot = hashes[id] & mask;
+        while (slots[slot] != EMPTY) slot = (slot + 1) & mask;
+        slots[slot] = id;
+    }
+
+    private static int hash(ByteBuffer data, int start, int end) {
+        int h = 0x811C9DC5;  //FNV-1a
+        for (int i = start; i < end; i++) {
+            h ^= data.get(i) & 0xFF;
+            h *= 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equals(byte[] bytes, ByteBuffer data, int start, int end) {
+        if (bytes.length != end - start) return false;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != data.get(start + i)) return false;
+        }
+        return true;
+    }
+
+    void addMessage(int id, int index) {
+        int[] indices = messageIndices[id];
+        int count = counts[id];
+        if (indices == null) indices = messageIndices[id] = new int[16];
+        else if (count == indices.length) indices = messageIndices[id] = Arrays.copyOf(indices, count * 2);
+        indices[count] = index;
+        counts[id] = count + 1;
+    }
+
+    /**
+     * Removes the message added last for sender id
+     */
+    void removeLastMessage(int id) {
+        counts[id]--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the decoded name, decoded once and then cached
+     */
+    String getName(int id) {
+        String name = names[id];
+        if (name == null) name = names[id] = new String(nameBytes[id], StandardCharsets.UTF_8);
+        return name;
+    }
+
+    int getMsgCount(int id) {
+        return counts[id];
+    }
+
+    /**
+     * @return the index in the {@link MessageStore} of the n-th message of sender id
+     */
+    int getMessageIndex(int id, int n) {
+        return messageIndices[id][n];
+    }
+
+    /**
+     * @return all ids sorted by message count (descending), ties in order of first appearance
+     */
+    @NonNull
+    int[] getIdsByMsgCount() {
+        Integer[] ids = new Integer[size];
+        for (int i = 0; i < size; i++) ids[i] = i;
+        Arrays.sort(ids, (a, b) -> counts[b] != counts[a] ? Integer.compare(counts[b], counts[a]) : Integer.compare(a, b));
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) result[i] = ids[i];
+        return result;
+    }
+}
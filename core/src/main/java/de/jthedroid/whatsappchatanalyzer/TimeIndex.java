@@ -0,0 +1,148 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Finds the message nearest to a point in time with a binary search. Exports are usually in
+ * chronological order, but clock changes can make timestamps go backwards; in that case the search
+ * runs over a permutation of the message indices sorted by time.
+ */
+class TimeIndex {
+    private final MessageStore messages;
+    private final int[] order;  //null if the messages are sorted by time
+
+    TimeIndex(@NonNull MessageStore messages) {
+        this.messages = messages;
+        this.order = isSorted(messages) ? null : sortByTime(messages);
+    }
+
+    /**
+     * Uses an order that was computed before, as returned by {@link #getOrder()}
+     */
+    TimeIndex(@NonNull MessageStore messages, @Nullable int[] order) {
+        this.messages = messages;
+        this.order = order;
+    }
+
+    /**
+     * Builds the index after the messages from keep on were replaced by the ones parsed from an
+     * extended export, as {@link Chat#extend} does. Only the new messages are sorted, they are
+     * merged into the order of the kept ones.
+     *
+     * @return the index of the messages, which this index was built for before they changed
+     */
+    @NonNull
+    TimeIndex extend(int keep) {
+        int n = messages.size();
+        boolean tailSorted = isSorted(messages, keep, n);
+        if (order == null && tailSorted && (keep == 0 || keep == n || messages.getTime(keep) >= messages.getTime(keep - 1))) {
+            return new TimeIndex(messages, null);
+        }
+        int[] head = null;  //null if the kept messages are sorted
+        if (order != null) {
+            head = new int[keep];
+            int k = 0;
+            for (int i : order) if (i < keep) head[k++] = i;
+        }
+        int[] tail = tailSorted ? null : sortByTime(messages, keep, n);
+        int[] merged = new int[n];
+        int i = 0, j = 0, k = 0;  //ranks in the kept and in the new messages
+        while (i < keep && j < n - keep) {
+            int a = head == null ? i : head[i], b = tail == null ? keep + j : tail[j];
+            if (messages.getTime(b) < messages.getTime(a)) {
+                merged[k++] = b;
+                j++;
+            } else {
+                merged[k++] = a;
+                i++;
+            }
+        }
+        for (; i < keep; i++) merged[k++] = head == null ? i : head[i];
+        for (; j < n - keep; j++) merged[k++] = tail == null ? keep + j : tail[j];
+        return new TimeIndex(messages, merged);
+    }
+
+    private static boolean isSorted(MessageStore messages) {
+        return isSorted(messages, 0, messages.size());
+    }
+
+    private static boolean isSorted(MessageStore messages, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            if (messages.getTime(i) < messages.getTime(i - 1)) return false;
+        }
+        return true;
+    }
+
+    private static int[] sortByTime(MessageStore messages) {
+        return sortByTime(messages, 0, messages.size());
+    }
+
+    /**
+     * @return the indices of the messages [from, to) sorted by time, messages with equal times in
+     * input order
+     */
+    private static int[] sortByTime(MessageStore messages, int from, int to) {
+        int n = to - from;
+        int[] a = new int[n], b = new int[n];
+        for (int i = 0; i < n; i++) a[i] = from + i;
+        for (int width = 1; width < n; width *= 2) {  //bottom-up merge sort, stable
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n), hi = Math.min(lo + 2 * width, n);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) {
+                    b[k++] = messages.getTime(a[j]) < messages.getTime(a[i]) ? a[j++] : a[i++];
+                }
+                while (i < mid) b[k++] = a[i++];
+                while (j < hi) b[k++] = a[j++];
+            }
+            int[] tmp = a;
+            a = b;
+            b = tmp;
+        }
+        return a;
+    }
+
+    /**
+     * @return the message indices sorted by time, or null if the messages are sorted already
+     */
+    @Nullable
+    int[] getOrder() {
+        return order;
+    }
+
+    private long timeAt(int rank) {
+        return messages.getTime(order == null ? rank : order[rank]);
+    }
+
+    /**
+     * @return the first rank whose time is not before time
+     */
+    private int lowerBound(long time) {
+        int lo = 0, hi = messages.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timeAt(mid) < time) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return the index of the message nearest to time; of several equally near messages the first
+     * one, or 0 if there are no messages
+     */
+    int findNearest(long time) {
+        int n = messages.size();
+        if (n == 0) return 0;
+        int after = lowerBound(time);
+        int rank;
+        if (after == 0) rank = 0;
+        else if (after == n) rank = lowerBound(timeAt(n - 1));
+        else {
+            long before = timeAt(after - 1);
+            rank = time - before <= timeAt(after) - time ? lowerBound(before) : after;
+        }
+        return order == null ? rank : order[rank];
+    }
+}
@@ -0,0 +1,170 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.text.ParsePosition;
+import java.util.TimeZone;
+
+/**
+ * Scans the timestamp of a message header byte by byte on the UTF-8 encoded export, e.g.
+ * <pre>
+ * 1/1/17, 05:55 - ...
+ * 05.04.19, 16:53 - ...
+ * 1/1/17, 5:55 PM - ...
+ * </pre>
+ * A strict {@link ChatFormat} only accepts headers with exactly the detected layout, a lenient one
+ * accepts all of the above. Instances are immutable and can be shared between threads, the
+ * position is kept in the caller's {@link ParsePosition}.
+ */
+class TimestampParser {
+    private static final long MINUTE = 60 * 1000L, HOUR = 60 * MINUTE, DAY = 24 * HOUR;
+    private static final byte NARROW_NBSP_0 = (byte) 0xE2, NARROW_NBSP_1 = (byte) 0x80, NARROW_NBSP_2 = (byte) 0xAF;  //U+202F
+
+    private final ChatFormat format;
+    private final TimeZone timeZone;
+
+    TimestampParser(@NonNull ChatFormat format, @NonNull TimeZone timeZone) {
+        this.format = format;
+        this.timeZone = timeZone;
+    }
+
+    TimestampParser(@NonNull ChatFormat format) {
+        this(format, TimeZone.getDefault());
+    }
+
+    ChatFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Parses the header at pp.getIndex(). On success the index is moved behind the " - "
+     * separating the timestamp from the rest of the message, otherwise the error index is set.
+     *
+     * @return the timestamp in epoch millis, or -1 if s doesn't start with a header
+     */
+    long parse(@NonNull ByteBuffer s, @NonNull ParsePosition pp) {
+        int i = pp.getIndex(), len = s.limit();
+        pp.setErrorIndex(-1);
+        //date: three numbers with the same separator
+        int start = i;
+        int n1 = 0;
+        while (i < len && isDigit(s.get(i)) && i - start < 4) n1 = n1 * 10 + s.get(i++) - '0';
+        int n1Digits = i - start;
+        if (n1Digits == 0 || n1Digits == 3 || i >= len) return fail(pp, i);
+        char sep = (char) s.get(i);
+        if (!format.acceptsSeparator(sep)) return fail(pp, i);
+        start = ++i;
+        int n2 = 0;
+        while (i < len && isDigit(s.get(i)) && i - start < 2) n2 = n2 * 10 + s.get(i++) - '0';
+        if (i == start || i >= len || s.get(i) != sep) return fail(pp, i);
+        start = ++i;
+        int n3 = 0;
+        while (i < len && isDigit(s.get(i)) && i - start < 4) n3 = n3 * 10 + s.get(i++) - '0';
+        int n3Digits = i - start;
+        if (n3Digits == 0 || n3Digits == 3) return fail(pp, i);
+        if (i < len && s.get(i) == ',') i++;
+        if (i >= len || s.get(i) != ' ') return fail(pp, i);
+        i++;
+        //time: h:mm with optional seconds and AM/PM
+        start = i;
+        int hour = 0;
+        while (i < len && isDigit(s.get(i)) && i - start < 2) hour = hour * 10 + s.get(i++) - '0';
+        if (i == start || i >= len || s.get(i) != ':') return fail(pp, i);
+        i++;
+        if (i + 1 >= len || !isDigit(s.get(i)) || !isDigit(s.get(i + 1))) return fail(pp, i);
+        int minute = (s.get(i) - '0') * 10 + s.get(i + 1) - '0';
+        i += 2;
+        int second = 0;
+        if (i + 2 < len && s.get(i) == ':' && isDigit(s.get(i + 1)) && isDigit(s.get(i + 2))) {
+            second = (s.get(i + 1) - '0') * 10 + s.get(i + 2) - '0';
+            i += 3;
+        } else if (format.strict && format.seconds) return fail(pp, i);
+        int amPm = 0;  //0: 24h, 1: AM, 2: PM
+        if ((!format.strict || format.twelveHour) && i + 1 < len) {
+            int j = i;
+            if (s.get(j) == ' ') j++;
+            else if (j + 3 < len && s.get(j) == NARROW_NBSP_0 && s.get(j + 1) == NARROW_NBSP_1 && s.get(j + 2) == NARROW_NBSP_2) j += 3;
+            int c = j < len ? s.get(j) | 0x20 : 0;  //lower case for ASCII letters
+            if (j > i && (c == 'a' || c == 'p')) {
+                j++;
+                if (j < len && s.get(j) == '.') j++;
+                if (j < len && (s.get(j) | 0x20) == 'm') {
+                    j++;
+                    if (j < len && s.get(j) == '.') j++;
+                    amPm = c == 'a' ? 1 : 2;
+                    i = j;
+                }
+            }
+        }
+        if (format.strict && format.twelveHour && amPm == 0) return fail(pp, i);
+        if (i + 2 >= len || s.get(i) != ' ' || s.get(i + 1) != '-' || s.get(i + 2) != ' ') {
+            return fail(pp, i);
+        }
+        i += 3;
+
+        int year, month, day;
+        if (n1Digits > 2) {  //yyyy-MM-dd
+            if (format.strict && format.order != ChatFormat.ORDER_YMD) return fail(pp, pp.getIndex());
+            year = n1;
+            month = n2;
+            day = n3;
+        } else {
+            if (format.strict && format.order == ChatFormat.ORDER_YMD) return fail(pp, pp.getIndex());
+            year = n3Digits == 2 ? 2000 + n3 : n3;
+            if (format.order == ChatFormat.ORDER_MDY) {
+                month = n1;
+                day = n2;
+            } else {
+                day = n1;
+                month = n2;
+            }
+            if (!format.strict && month > 12 && day <= 12) {  //the locale's guess was wrong
+                int tmp = month;
+                month = day;
+                day = tmp;
+            }
+        }
+        if (amPm != 0) {
+            if (hour < 1 || hour > 12) return fail(pp, start);
+            if (hour == 12) hour = 0;
+            if (amPm == 2) hour += 12;
+        }
+        //a date like the 31st of February is text, not a header rolling over into March
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) || hour > 23 || minute > 59 || second > 59) {
+            return fail(pp, pp.getIndex());
+        }
+        long local = daysFromCivil(year, month, day) * DAY + hour * HOUR + minute * MINUTE + second * 1000L;
+        pp.setIndex(i);
+        return local - timeZone.getOffset(local - timeZone.getRawOffset());
+    }
+
+    private static long fail(ParsePosition pp, int index) {
+        pp.setErrorIndex(index);
+        return -1;
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return the number of days of the month, 1 to 12, in the proleptic Gregorian calendar
+     */
+    static int daysInMonth(int year, int month) {
+        if (month == 2) return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * @return days since 1970-01-01 for the given date in the proleptic Gregorian calendar
+     */
+    static long daysFromCivil(int y, int m, int d) {
+        y -= m <= 2 ? 1 : 0;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yoe = y - era * 400;
+        long doy = (153 * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+}
@@ -0,0 +1,148 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Splits UTF-8 text into tokens without allocating: words are runs of letters and digits, which
+ * are lower cased, and if enabled every emoji is a token of its own. Everything else separates
+ * tokens. A token is written to {@link #token} as UTF-8, together with its FNV-1a hash.
+ */
+class TokenReader {
+    static final int WORD = 0, EMOJI = 1;
+
+    byte[] token = new byte[64];
+    int length, hash, type;
+    private final boolean emoji;
+    private ByteBuffer data;
+    private int pos, end;
+
+    /**
+     * @param emoji whether emoji are returned as tokens, else they separate words
+     */
+    TokenReader(boolean emoji) {
+        this.emoji = emoji;
+    }
+
+    void reset(ByteBuffer data, int start, int end) {
+        this.data = data;
+        this.pos = start;
+        this.end = end;
+    }
+
+    /**
+     * Reads the next token into token[0, length)
+     *
+     * @return false if there are no more tokens
+     */
+    boolean next() {
+        length = 0;
+        hash = 0x811C9DC5;
+        type = WORD;
+        while (pos < end) {
+            int start = pos;
+            int cp = readCodePoint();
+            if (cp >= 0 && isWordChar(cp)) {
+                append(Character.toLowerCase(cp));
+            } else if (emoji && cp >= 0 && isEmoji(cp)) {
+                if (length > 0) {
+                    pos = start;  //return the word first
+                    break;
+                }
+                type = EMOJI;
+                append(cp);
+                if (isRegionalIndicator(cp) && pos < end) {
+                    //two regional indicators make a flag
+                    int next = pos;
+                    int cp2 = readCodePoint();
+                    if (isRegionalIndicator(cp2)) append(cp2);
+                    else pos = next;
+                }
+                break;
+            } else if (length > 0) break;
+        }
+        hash ^= hash >>> 16;
+        return length > 0;
+    }
+
+    /**
+     * @return the code point at pos, or -1 for invalid UTF-8; pos is moved past it
+     */
+    private int readCodePoint() {
+        int b = data.get(pos) & 0xFF, cp, n;
+        if (b < 0x80) {
+            cp = b;
+            n = 1;
+        } else if (b >= 0xC0 && b < 0xE0 && pos + 1 < end) {
+            cp = (b & 0x1F) << 6 | data.get(pos + 1) & 0x3F;
+            n = 2;
+        } else if (b >= 0xE0 && b < 0xF0 && pos + 2 < end) {
+            cp = (b & 0x0F) << 12 | (data.get(pos + 1) & 0x3F) << 6 | data.get(pos + 2) & 0x3F;
+            n = 3;
+        } else if (b >= 0xF0 && b < 0xF8 && pos + 3 < end) {
+            cp = (b & 0x07) << 18 | (data.get(pos + 1) & 0x3F) << 12 | (data.get(pos + 2) & 0x3F) << 6 | data.get(pos + 3) & 0x3F;
+            n = 4;
+        } else {
+            cp = -1;
+            n = 1;
+        }
+        pos += n;
+        return cp;
+    }
+
+    /**
+     * @return true if the code point is part of a word
+     */
+    static boolean isWordChar(int cp) {
+        return Character.isLetterOrDigit(cp);
+    }
+
+    /**
+     * Emoji without skin tone modifiers, variation selectors and joiners, which are skipped
+     */
+    private static boolean isEmoji(int cp) {
+        if (cp >= 0x1F3FB && cp <= 0x1F3FF) return false;  //skin tones
+        return cp >= 0x1F000 && cp <= 0x1FAFF || cp >= 0x2600 && cp <= 0x27BF
+                || cp >= 0x2300 && cp <= 0x23FF || cp >= 0x2B00 && cp <= 0x2BFF;
+    }
+
+    private static boolean isRegionalIndicator(int cp) {
+        return cp >= 0x1F1E6 && cp <= 0x1F1FF;
+    }
+
+    private void append(int cp) {
+        if (length + 4 > token.length) token = Arrays.copyOf(token, token.length * 2);
+        int start = length;
+        if (cp < 0x80) {
+            token[length++] = (byte) cp;
+        } else if (cp < 0x800) {
+            token[length++] = (byte) (0xC0 | cp >> 6);
+            token[length++] = (byte) (0x80 | cp & 0x3F);
+        } else if (cp < 0x10000) {
+            token[length++] = (byte) (0xE0 | cp >> 12);
+            token[length++] = (byte) (0x80 | cp >> 6 & 0x3F);
+            token[length++] = (byte) (0x80 | cp & 0x3F);
+        } else {
+            token[length++] = (byte) (0xF0 | cp >> 18);
+            token[length++] = (byte) (0x80 | cp >> 12 & 0x3F);
+            token[length++] = (byte) (0x80 | cp >> 6 & 0x3F);
+            token[length++] = (byte) (0x80 | cp & 0x3F);
+        }
+        for (int i = start; i < length; i++) {
+            hash ^= token[i] & 0xFF;
+            hash *= 0x01000193;
+        }
+    }
+
+    /**
+     * @return the FNV-1a hash of token[0, length), the same as for a token read from text
+     */
+    static int hash(byte[] token, int length) {
+        int h = 0x811C9DC5;
+        for (int i = 0; i < length; i++) {
+            h ^= token[i] & 0xFF;
+            h *= 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,139 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Leaderboards of the most used words, emoji and word pairs, for the whole chat and per sender.
+ * Every leaderboard is a {@link HeavyHitters} sketch, so the memory needed doesn't grow with the
+ * length of the chat. System messages and media placeholders like &lt;Media omitted&gt; are skipped.
+ * <p>
+ * The stats of separately parsed chunks are merged like the chunks themselves; sender ids refer to
+ * the sender table of the chunk or chat the stats belong to.
+ */
+class TokenStats {
+    private static final int WORD_CAPACITY = 1024, EMOJI_CAPACITY = 256, BIGRAM_CAPACITY = 1024;
+    private static final int SENDER_WORD_CAPACITY = 128, SENDER_EMOJI_CAPACITY = 64;
+
+    private final HeavyHitters words = new HeavyHitters(WORD_CAPACITY);
+    private final HeavyHitters emoji = new HeavyHitters(EMOJI_CAPACITY);
+    private final HeavyHitters bigrams = new HeavyHitters(BIGRAM_CAPACITY);
+    private final ArrayList<HeavyHitters> senderWords = new ArrayList<>(), senderEmoji = new ArrayList<>();
+    private final TokenReader reader = new TokenReader(true);
+    private byte[] bigram = new byte[128];  //the last word, then a space and the current word
+
+    /**
+     * Counts the tokens of the messages from index from to index to
+     */
+    void add(@NonNull MessageStore messages, int from, int to) {
+        for (int i = from; i < to; i++) count(messages, i, true);
+    }
+
+    /**
+     * Takes back the tokens of message i, which must have been added
+     */
+    void remove(@NonNull MessageStore messages, int i) {
+        count(messages, i, false);
+    }
+
+    private void count(MessageStore messages, int i, boolean add) {
+        int senderId = messages.getSenderId(i);
+        if (senderId == MessageStore.NO_SENDER) return;
+        ByteBuffer text = messages.getTextArena();
+        int start = messages.getTextStart(i), end = messages.getTextEnd(i);
+        if (isPlaceholder(text, start, end)) return;
+        HeavyHitters sWords = getOrCreate(senderWords, senderId, SENDER_WORD_CAPACITY);
+        HeavyHitters sEmoji = getOrCreate(senderEmoji, senderId, SENDER_EMOJI_CAPACITY);
+        reader.reset(text, start, end);
+        int lastLength = 0;
+        while (reader.next()) {
+            byte[] token = reader.token;
+            int length = reader.length;
+            if (reader.type == TokenReader.EMOJI) {
+                count(emoji, token, length, reader.hash, add);
+                count(sEmoji, token, length, reader.hash, add);
+                lastLength = 0;
+                continue;
+            }
+            count(words, token, length, reader.hash, add);
+            count(sWords, token, length, reader.hash, add);
+            if (bigram.length < lastLength + 1 + length) bigram = Arrays.copyOf(bigram, lastLength + 1 + length + 64);
+            if (lastLength > 0) {
+                bigram[lastLength] = ' ';
+                System.arraycopy(token, 0, bigram, lastLength + 1, length);
+                int bigramLength = lastLength + 1 + length;
+                count(bigrams, bigram, bigramLength, TokenReader.hash(bigram, bigramLength), add);
+            }
+            System.arraycopy(token, 0, bigram, 0, length);
+            lastLength = length;
+        }
+    }
+
+    private static void count(HeavyHitters h, byte[] key, int length, int hash, boolean add) {
+        if (add) h.add(key, length, hash, 1);
+        else h.remove(key, length, hash);
+    }
+
+    /**
+     * @return true if the text is just something like &lt;Media omitted&gt;
+     */
+    private static boolean isPlaceholder(ByteBuffer text, int start, int end) {
+        while (start < end && text.get(start) == ' ') start++;
+        return end - start >= 2 && text.get(start) == '<' && text.get(end - 1) == '>';
+    }
+
+    private static HeavyHitters getOrCreate(ArrayList<HeavyHitters> list, int id, int capacity) {
+        while (list.size() <= id) list.add(null);
+        HeavyHitters h = list.get(id);
+        if (h == null) list.set(id, h = new HeavyHitters(capacity));
+        return h;
+    }
+
+    /**
+     * Adds the counts of other
+     *
+     * @param senderIdMap maps other's sender ids to the ids used by this
+     */
+    void merge(@NonNull TokenStats other, @NonNull int[] senderIdMap) {
+        words.merge(other.words);
+        emoji.merge(other.emoji);
+        bigrams.merge(other.bigrams);
+        merge(senderWords, other.senderWords, senderIdMap, SENDER_WORD_CAPACITY);
+        merge(senderEmoji, other.senderEmoji, senderIdMap, SENDER_EMOJI_CAPACITY);
+    }
+
+    private static void merge(ArrayList<HeavyHitters> list, ArrayList<HeavyHitters> other, int[] senderIdMap, int capacity) {
+        for (int id = 0; id < other.size(); id++) {
+            if (other.get(id) != null) getOrCreate(list, senderIdMap[id], capacity).merge(other.get(id));
+        }
+    }
+
+    @NonNull
+    HeavyHitters getWords() {
+        return words;
+    }
+
+    @NonNull
+    HeavyHitters getEmoji() {
+        return emoji;
+    }
+
+    @NonNull
+    HeavyHitters getBigrams() {
+        return bigrams;
+    }
+
+    /**
+     * @return the words of sender id, or null if the sender has no counted messages
+     */
+    HeavyHitters getWords(int id) {
+        return id < senderWords.size() ? senderWords.get(id) : null;
+    }
+
+    HeavyHitters getEmoji(int id) {
+        return id < senderEmoji.size() ? senderEmoji.get(id) : null;
+    }
+}
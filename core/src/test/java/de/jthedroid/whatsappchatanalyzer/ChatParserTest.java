@@ -0,0 +1,101 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChatParserTest {
+    private static final String DAY_MONTH_YEAR = "%1$td.%1$tm.%1$ty, %1$tH:%1$tM - ";
+    private static final String MONTH_DAY_YEAR_12H = "%1$tm/%1$td/%1$ty, %1$tl:%1$tM %1$Tp - ";
+    private static final String ISO_SECONDS = "%1$tY-%1$tm-%1$td, %1$tH:%1$tM:%1$tS - ";
+
+    private static Chat parse(ByteBuffer data, ChatFormat format, int parallelism) throws InterruptedException {
+        Chat chat = new Chat();
+        chat.init(data, format, parallelism, null);
+        return chat;
+    }
+
+    private static void assertParsedStrict(TestExport export) throws InterruptedException {
+        ByteBuffer data = export.toBuffer();
+        ChatFormat format = ChatFormatDetector.detect(data, null);
+        assertTrue(format.toString(), format.strict);
+        export.assertParsed(parse(data, format, 1));
+    }
+
+    @Test
+    public void parsesDayMonthYear() throws InterruptedException {
+        assertParsedStrict(new TestExport()
+                .add(DAY_MONTH_YEAR, 0, null, "Messages to this group are now secured with end-to-end encryption.")
+                .add(DAY_MONTH_YEAR, 1, "Alice", " hi")
+                .add(DAY_MONTH_YEAR, 0, "Bob", " see you: tomorrow")
+                .add(DAY_MONTH_YEAR, 7 * 24 * 60, "Alice", " two\nlines")
+                .addRandom(DAY_MONTH_YEAR, 200, 1));
+    }
+
+    @Test
+    public void parsesMonthDayYearWithAmPm() throws InterruptedException {
+        assertParsedStrict(new TestExport()
+                .add(MONTH_DAY_YEAR_12H, 0, "Alice", " good morning")
+                .add(MONTH_DAY_YEAR_12H, 4 * 60, "Bob", " noon")
+                .add(MONTH_DAY_YEAR_12H, 12 * 60, "Alice", " midnight")
+                .addRandom(MONTH_DAY_YEAR_12H, 200, 2));
+    }
+
+    @Test
+    public void parsesYearMonthDayWithSeconds() throws InterruptedException {
+        assertParsedStrict(new TestExport().addRandom(ISO_SECONDS, 200, 3));
+    }
+
+    @Test
+    public void lenientFormatAcceptsMixedHeaders() throws InterruptedException {
+        TestExport export = new TestExport()
+                .add(DAY_MONTH_YEAR, 0, "Alice", " dots")
+                .add("%1$td/%1$tm/%1$ty, %1$tl:%1$tM %1$Tp - ", 5, "Bob", " slashes and 12h")
+                .add("%1$te-%1$tm-%1$ty, %1$tH:%1$tM - ", 5, "Alice", " dashes and a single digit day")
+                .add("%1$tm/%1$td/%1$ty, %1$tH:%1$tM - ", 60 * 24 * 20, "Bob", " month first, which the day after the 12th gives away");
+        ChatFormat lenient = ChatFormat.fromString("0?~");
+        assertFalse(lenient.strict);
+        export.assertParsed(parse(export.toBuffer(), lenient, 1));
+    }
+
+    @Test
+    public void impossibleDatesAreNoHeaders() throws InterruptedException {
+        TestExport export = new TestExport()
+                .add(DAY_MONTH_YEAR, 0, "Alice", " the dates:\n31.02.19, 10:00 - Bob: no such day"
+                        + "\n29.02.19, 10:00 - Bob: not a leap year\n123.04.19, 10:00 - Bob: three digits")
+                .add(DAY_MONTH_YEAR, 60 * 24 * 365, "Bob", " a year later");
+        export.assertParsed(parse(export.toBuffer(), ChatFormat.fromString("0?~"), 1));
+        ByteBuffer leapDay = ByteBuffer.wrap("29.02.20, 10:00 - Bob: leap day\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(1, parse(leapDay, ChatFormat.fromString("0."), 1).getMsgCount());
+    }
+
+    @Test
+    public void keepsLinesBeforeTheFirstHeaderOut() throws InterruptedException {
+        TestExport export = new TestExport().addRandom(DAY_MONTH_YEAR, 20, 4);
+        ByteBuffer data = export.toBuffer();
+        byte[] bytes = new byte[data.limit() + 4];
+        bytes[0] = (byte) 0xEF;  //BOM
+        bytes[1] = (byte) 0xBB;
+        bytes[2] = (byte) 0xBF;
+        bytes[3] = '\n';
+        data.get(bytes, 4, data.limit());
+        Chat chat = parse(ByteBuffer.wrap(bytes), ChatFormat.fromString("0."), 1);
+        assertEquals(export.size(), chat.getMsgCount());
+    }
+
+    @Test
+    public void chunksGiveTheSameChatAsOneSequentialParse() throws InterruptedException {
+        TestExport export = new TestExport().addRandom(DAY_MONTH_YEAR, 40000, 5);
+        ByteBuffer data = export.toBuffer();
+        assertTrue(data.limit() > 2 * ChatParser.CHUNK_SIZE);
+        ChatFormat format = ChatFormatDetector.detect(data, null);
+        Chat sequential = parse(data, format, 1);
+        export.assertParsed(sequential);
+        TestExport.assertSameChat(sequential, parse(data, format, 4));
+    }
+}
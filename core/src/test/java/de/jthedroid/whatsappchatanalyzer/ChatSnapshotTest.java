@@ -0,0 +1,133 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChatSnapshotTest {
+    private static final String HEADER = "%1$td.%1$tm.%1$ty, %1$tH:%1$tM - ";
+    private static final ChatFormat FORMAT = ChatFormat.fromString("0.");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static Chat parse(ByteBuffer data) throws InterruptedException {
+        Chat chat = new Chat();
+        chat.init(data, FORMAT, 1, null);
+        return chat;
+    }
+
+    private static void write(File file, Chat chat, ByteBuffer data) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            ChatSnapshot.write(chat, data, ChatSnapshot.fingerprint(data), channel);
+        }
+    }
+
+    private static Chat read(File file, ByteBuffer data) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ChatSnapshot.Header header = ChatSnapshot.Header.read(channel);
+            assertNotNull(header);
+            assertEquals(ChatSnapshot.fingerprint(data), header.fingerprint);
+            assertTrue(ChatSnapshot.matches(header.readBlockHashes(channel), data, header.exportSize));
+            return ChatSnapshot.read(channel, header, data, null);
+        }
+    }
+
+    @Test
+    public void restoresTheChatItWasWrittenFrom() throws IOException, InterruptedException {
+        ByteBuffer data = new TestExport().addRandom(HEADER, 20000, 1).toBuffer();
+        Chat chat = parse(data);
+        File file = folder.newFile();
+        write(file, chat, data);
+        Chat restored = read(file, data);
+        assertTrue(restored.isValid());
+        TestExport.assertSameChat(chat, restored);
+    }
+
+    @Test
+    public void restoresTheTimeOrderOfUnsortedMessages() throws IOException, InterruptedException {
+        ByteBuffer data = new TestExport().addRandom(HEADER, 100, 2).add(HEADER, -24 * 60, "Bob", " yesterday")
+                .addRandom(HEADER, 100, 3).toBuffer();
+        Chat chat = parse(data);
+        assertNotNull(chat.getTimeIndex().getOrder());
+        File file = folder.newFile();
+        write(file, chat, data);
+        TestExport.assertSameChat(chat, read(file, data));
+    }
+
+    @Test
+    public void incompleteSnapshotIsNoSnapshot() throws IOException, InterruptedException {
+        ByteBuffer data = new TestExport().addRandom(HEADER, 100, 4).toBuffer();
+        File file = folder.newFile();
+        write(file, parse(data), data);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            ChatSnapshot.Header.invalidate(channel);
+            assertNull(ChatSnapshot.Header.read(channel));
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(folder.newFile(), "r");
+             FileChannel channel = raf.getChannel()) {
+            assertNull(ChatSnapshot.Header.read(channel));
+        }
+    }
+
+    @Test
+    public void blockHashesTellEditedExportsApart() throws InterruptedException {
+        ByteBuffer data = new TestExport().addRandom(HEADER, 20000, 5).toBuffer();
+        long[] hashes = ChatSnapshot.blockHashes(data, data.limit());
+        assertTrue(ChatSnapshot.matches(hashes, data, data.limit()));
+        byte[] edited = new byte[data.limit()];
+        data.duplicate().get(edited);
+        edited[ChatSnapshot.BLOCK_SIZE + 100] ^= 1;  //not in a block the fingerprint samples
+        ByteBuffer editedData = ByteBuffer.wrap(edited);
+        assertEquals(ChatSnapshot.fingerprint(data), ChatSnapshot.fingerprint(editedData));
+        assertFalse(ChatSnapshot.matches(hashes, editedData, data.limit()));
+        //a longer export starting with the same bytes matches, a shorter one doesn't
+        byte[] longer = new byte[data.limit() + 10];
+        data.duplicate().get(longer, 0, data.limit());
+        assertTrue(ChatSnapshot.matches(hashes, ByteBuffer.wrap(longer), data.limit()));
+        ByteBuffer shorter = data.duplicate();
+        shorter.limit(data.limit() - 1);
+        assertFalse(ChatSnapshot.matches(hashes, shorter, data.limit()));
+    }
+
+    @Test
+    public void appendedSnapshotEqualsANewOne() throws IOException, InterruptedException {
+        TestExport export = new TestExport().addRandom(HEADER, 3000, 6);
+        ByteBuffer old = export.toBuffer();
+        ByteBuffer data = export.addRandom(HEADER, 3000, 7).toBuffer();
+        File file = folder.newFile();
+        write(file, parse(old), old);
+        Chat extended;
+        ChatSnapshot.Header header;
+        long[] hashes;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            header = ChatSnapshot.Header.read(channel);
+            assertNotNull(header);
+            hashes = header.readBlockHashes(channel);
+            assertTrue(ChatSnapshot.matches(hashes, data, header.exportSize));
+            extended = ChatSnapshot.read(channel, header, data, null);
+        }
+        extended.extend(data, FORMAT);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            ChatSnapshot.append(extended, data, ChatSnapshot.fingerprint(data), channel, header, hashes);
+        }
+        TestExport.assertSameChat(parse(data), read(file, data));
+    }
+}
@@ -0,0 +1,90 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.text.ParsePosition;
+
+public class ChatTest {
+    private static final String HEADER = "%1$td.%1$tm.%1$ty, %1$tH:%1$tM - ";
+    private static final ChatFormat FORMAT = ChatFormat.fromString("0.");
+
+    private static Chat parse(ByteBuffer data) throws InterruptedException {
+        Chat chat = new Chat();
+        chat.init(data, FORMAT, 1, null);
+        return chat;
+    }
+
+    /**
+     * @return the first size bytes of data, as a separate buffer
+     */
+    private static ByteBuffer prefix(ByteBuffer data, int size) {
+        byte[] bytes = new byte[size];
+        data.duplicate().get(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * @return the start of the line of the n-th message header
+     */
+    private static int headerStart(ByteBuffer data, int n) {
+        TimestampParser parser = new TimestampParser(FORMAT);
+        ParsePosition pp = new ParsePosition(0);
+        for (int i = 0; i < data.limit(); i++) {
+            if (i > 0 && data.get(i - 1) != '\n') continue;
+            pp.setIndex(i);
+            parser.parse(data, pp);
+            if (pp.getErrorIndex() == -1 && n-- == 0) return i;
+        }
+        throw new IllegalArgumentException();
+    }
+
+    @Test
+    public void extendEqualsFullParse() throws InterruptedException {
+        ByteBuffer data = new TestExport().addRandom(HEADER, 5000, 1).toBuffer();
+        for (int cut : new int[]{headerStart(data, 4000), headerStart(data, 4000) - 1, headerStart(data, 4000) + 20, headerStart(data, 1)}) {
+            Chat chat = parse(data);
+            Chat extended = snapshotOf(parse(prefix(data, cut)), data);
+            extended.extend(data, FORMAT);
+            TestExport.assertSameChat(chat, extended);
+        }
+    }
+
+    @Test
+    public void extendKeepsTheTimeIndexWhenTimeGoesBack() throws InterruptedException {
+        TestExport export = new TestExport().addRandom(HEADER, 300, 2);
+        int cut = export.toBuffer().limit();
+        export.add(HEADER, -3 * 24 * 60, "Bob", " back in time").addRandom(HEADER, 100, 3)
+                .add(HEADER, -90, "Alice", " and back again");
+        ByteBuffer data = export.toBuffer();
+        Chat extended = snapshotOf(parse(prefix(data, cut)), data);
+        extended.extend(data, FORMAT);
+        TestExport.assertSameChat(parse(data), extended);
+        export.assertParsed(extended);
+    }
+
+    /**
+     * @return chat, with its messages moved to the text arena data, as a snapshot restores it
+     */
+    static Chat snapshotOf(Chat chat, ByteBuffer data) {
+        MessageStore m = chat.getMessages();
+        int n = m.size();
+        long[] times = new long[n];
+        int[] senderIds = new int[n], textStarts = new int[n], textEnds = new int[n];
+        byte[] flags = new byte[n];
+        for (int i = 0; i < n; i++) {
+            times[i] = m.getTime(i);
+            senderIds[i] = m.getSenderId(i);
+            textStarts[i] = m.getTextStart(i);
+            textEnds[i] = m.getTextEnd(i);
+            flags[i] = m.getFlags(i);
+        }
+        MessageStore messages = new MessageStore(data, times, senderIds, textStarts, textEnds, flags);
+        SenderTable senders = new SenderTable();
+        senders.merge(chat.getSenderTable());
+        Chat restored = new Chat();
+        restored.init(messages, senders, chat.getCube(), chat.getConversationStats(),
+                new TimeIndex(messages, chat.getTimeIndex().getOrder()), null);
+        return restored;
+    }
+}
@@ -0,0 +1,105 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class GraphHitTesterTest {
+    //a 1000 x 500 pixel graph, the y-axis points up like on the screen
+    private static final float FROM_X = 0, TO_X = 1000, FROM_Y = 500, TO_Y = 0;
+
+    private static GraphHitTester hitTester(GraphType type, float[] x, float[] y) {
+        GraphData graphData = new GraphData(x, y, LabelFormatter.count(), LabelFormatter.count(), type);
+        return new GraphHitTester(graphData, FROM_X, TO_X, FROM_Y, TO_Y);
+    }
+
+    /**
+     * @return the index of the nearest point on the screen, the first one of equally near points
+     */
+    private static int findNearestBruteForce(GraphData graphData, boolean bars, float x, float y) {
+        float[] xData = graphData.getXData(), yData = graphData.getYData();
+        int best = -1;
+        float bestDist = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < xData.length; i++) {
+            float dx = FROM_X + (TO_X - FROM_X) * xData[i] - x, sy = FROM_Y + (TO_Y - FROM_Y) * yData[i], dy;
+            if (bars) dy = y < sy ? sy - y : y > FROM_Y ? y - FROM_Y : 0;
+            else dy = sy - y;
+            float d = dx * dx + dy * dy;
+            if (d < bestDist) {
+                bestDist = d;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void emptyGraphHasNoPoint() {
+        assertEquals(-1, hitTester(GraphType.DEFAULT, new float[0], new float[0]).findNearest(10, 10));
+    }
+
+    @Test
+    public void singlePointIsAlwaysNearest() {
+        GraphHitTester hitTester = hitTester(GraphType.DEFAULT, new float[]{5}, new float[]{5});
+        assertEquals(0, hitTester.findNearest(-100, -100));
+        assertEquals(0, hitTester.findNearest(2000, 2000));
+    }
+
+    @Test
+    public void touchOutsideTheGraphFindsTheOuterPoints() {
+        GraphHitTester hitTester = hitTester(GraphType.DEFAULT, new float[]{0, 1, 2, 3}, new float[]{0, 3, 1, 2});
+        assertEquals(0, hitTester.findNearest(-500, 500));
+        assertEquals(3, hitTester.findNearest(1500, 0));
+    }
+
+    @Test
+    public void prefersTheEarlierPointOnTies() {
+        GraphHitTester hitTester = hitTester(GraphType.DEFAULT, new float[]{0, 1, 2}, new float[]{0, 0, 0});
+        assertEquals(0, hitTester.findNearest(250, 500));
+        assertEquals(1, hitTester.findNearest(750, 500));
+        //same x, different y
+        hitTester = hitTester(GraphType.DEFAULT, new float[]{0, 1, 1, 2}, new float[]{0, 2, 0, 1});
+        assertEquals(1, hitTester.findNearest(500, 0));
+        assertEquals(2, hitTester.findNearest(500, 500));
+    }
+
+    @Test
+    public void touchInsideABarHitsIt() {
+        GraphHitTester hitTester = hitTester(GraphType.BARGRAPH, new float[]{0, 1, 2}, new float[]{10, 1, 0});
+        //far below the top of bar 0, but inside it
+        assertEquals(0, hitTester.findNearest(10, 450));
+        //above the short bar 1, but nearer to it than to the top of bar 0
+        assertEquals(1, hitTester.findNearest(500, 300));
+    }
+
+    @Test
+    public void findsTheSameAsBruteForce() {
+        Random random = new Random(1);
+        for (GraphType type : GraphType.values()) {
+            for (boolean sorted : new boolean[]{true, false}) {
+                float[] x = new float[300], y = new float[300];
+                for (int i = 0; i < x.length; i++) {
+                    x[i] = sorted ? i / 3 : random.nextInt(100);
+                    y[i] = random.nextInt(50);
+                }
+                GraphData graphData = new GraphData(x, y, LabelFormatter.count(), LabelFormatter.count(), type);
+                GraphHitTester hitTester = new GraphHitTester(graphData, FROM_X, TO_X, FROM_Y, TO_Y);
+                for (int touch = 0; touch < 500; touch++) {
+                    float tx = random.nextFloat() * 1200 - 100, ty = random.nextFloat() * 700 - 100;
+                    int expected = findNearestBruteForce(graphData, type == GraphType.BARGRAPH, tx, ty);
+                    int actual = hitTester.findNearest(tx, ty);
+                    assertEquals(type + " " + sorted + " " + tx + "," + ty, distance(graphData, type, expected, tx, ty),
+                            distance(graphData, type, actual, tx, ty), 1e-3f);
+                }
+            }
+        }
+    }
+
+    private static float distance(GraphData graphData, GraphType type, int i, float x, float y) {
+        float dx = FROM_X + (TO_X - FROM_X) * graphData.getXData()[i] - x, sy = FROM_Y + (TO_Y - FROM_Y) * graphData.getYData()[i];
+        float dy = type != GraphType.BARGRAPH ? sy - y : y < sy ? sy - y : y > FROM_Y ? y - FROM_Y : 0;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
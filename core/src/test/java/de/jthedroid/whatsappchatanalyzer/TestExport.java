@@ -0,0 +1,122 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Builds an export message by message and remembers what the parser should make of it
+ */
+class TestExport {
+    private final StringBuilder text = new StringBuilder();
+    private final ArrayList<Long> times = new ArrayList<>();
+    private final ArrayList<String> senders = new ArrayList<>(), texts = new ArrayList<>();
+    private final Calendar calendar = Calendar.getInstance();
+
+    TestExport() {
+        calendar.clear();
+        calendar.set(2019, Calendar.APRIL, 5, 8, 0, 0);
+    }
+
+    /**
+     * @param header the format of the header, with the time as argument 1
+     * @param sender the sender, or null for a system message
+     */
+    TestExport add(String header, int minutesLater, String sender, String message) {
+        calendar.add(Calendar.MINUTE, minutesLater);
+        text.append(String.format(Locale.ROOT, header, calendar)).append(sender == null ? "" : sender + ":")
+                .append(message).append('\n');
+        times.add(calendar.getTimeInMillis());
+        senders.add(sender);
+        texts.add(message);
+        return this;
+    }
+
+    /**
+     * Adds count messages of a few senders, some of them system messages or spanning several lines
+     */
+    TestExport addRandom(String header, int count, long seed) {
+        Random random = new Random(seed);
+        String[] names = {"Alice", "Bob", "Dörte 😀", "+49 170 1234567"};
+        String[] words = {"hi", "ok", "😂", "see you: tomorrow", "Die Straße", "<Media omitted>"};
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(50) == 0) {
+                add(header, random.nextInt(90), null, "Alice changed the group description");
+                continue;
+            }
+            StringBuilder message = new StringBuilder();
+            for (int w = 1 + random.nextInt(8); w > 0; w--) {
+                message.append(random.nextInt(10) == 0 ? '\n' : ' ').append(words[random.nextInt(words.length)]);
+            }
+            add(header, random.nextInt(90), names[random.nextInt(names.length)], message.toString());
+        }
+        return this;
+    }
+
+    ByteBuffer toBuffer() {
+        return ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    int size() {
+        return times.size();
+    }
+
+    void assertParsed(Chat chat) {
+        MessageStore messages = chat.getMessages();
+        assertEquals(times.size(), messages.size());
+        for (int i = 0; i < times.size(); i++) {
+            assertEquals("time of message " + i, (long) times.get(i), messages.getTime(i));
+            String sender = senders.get(i);
+            int senderId = messages.getSenderId(i);
+            assertEquals("sender of message " + i, sender, senderId == MessageStore.NO_SENDER ? null : chat.getSenderTable().getName(senderId));
+            assertEquals("text of message " + i, texts.get(i), messages.getText(i));
+            int flags = (sender == null ? MessageStore.FLAG_SYSTEM : 0) | (texts.get(i).indexOf('\n') >= 0 ? MessageStore.FLAG_MULTILINE : 0);
+            assertEquals("flags of message " + i, flags, messages.getFlags(i));
+        }
+    }
+
+    /**
+     * Asserts that both chats have the same messages, senders and statistics
+     */
+    static void assertSameChat(Chat expected, Chat actual) {
+        MessageStore e = expected.getMessages(), a = actual.getMessages();
+        assertEquals(e.size(), a.size());
+        for (int i = 0; i < e.size(); i++) {
+            assertEquals(e.getTime(i), a.getTime(i));
+            assertEquals(e.getSenderId(i), a.getSenderId(i));
+            assertEquals(e.getTextStart(i), a.getTextStart(i));
+            assertEquals(e.getTextEnd(i), a.getTextEnd(i));
+            assertEquals(e.getFlags(i), a.getFlags(i));
+        }
+        SenderTable es = expected.getSenderTable(), as = actual.getSenderTable();
+        assertEquals(es.size(), as.size());
+        for (int id = 0; id < es.size(); id++) {
+            assertEquals(es.getName(id), as.getName(id));
+            assertEquals(es.getMsgCount(id), as.getMsgCount(id));
+            for (int k = 0; k < es.getMsgCount(id); k++) assertEquals(es.getMessageIndex(id, k), as.getMessageIndex(id, k));
+        }
+        assertEquals(expected.toString(), actual.toString());
+        AggregationCube ec = expected.getCube(), ac = actual.getCube();
+        assertEquals(ec.getDayCount(), ac.getDayCount());
+        for (int id = AggregationCube.ALL; id < es.size(); id++) {
+            for (int d = 0; d < ec.getDayCount(); d++) assertEquals(ec.getDayCount(id, d), ac.getDayCount(id, d));
+        }
+        ConversationStats est = expected.getConversationStats(), ast = actual.getConversationStats();
+        assertEquals(est.getSessions(), ast.getSessions());
+        assertEquals(est.getReplyTimes().getCount(), ast.getReplyTimes().getCount());
+        for (int id = 0; id < es.size(); id++) {
+            assertEquals(est.getTurns(id), ast.getTurns(id));
+            assertEquals(est.getSessionsStarted(id), ast.getSessionsStarted(id));
+            assertEquals(est.getReplyTimes(id).getCount(), ast.getReplyTimes(id).getCount());
+            for (int to = 0; to < es.size(); to++) assertEquals(est.getReplyCount(id, to), ast.getReplyCount(id, to));
+        }
+        for (int i = 0; i < e.size(); i += Math.max(1, e.size() / 100)) {
+            assertEquals(expected.getIndexForDate(e.getTime(i) + 1), actual.getIndexForDate(e.getTime(i) + 1));
+        }
+    }
+}
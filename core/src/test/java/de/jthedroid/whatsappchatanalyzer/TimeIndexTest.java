@@ -0,0 +1,101 @@
+package de.jthedroid.whatsappchatanalyzer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TimeIndexTest {
+    private static MessageStore messages(long... times) {
+        MessageStore messages = new MessageStore(ByteBuffer.allocate(0), times.length);
+        for (long time : times) messages.add(time, MessageStore.NO_SENDER, 0, 0, (byte) 0);
+        return messages;
+    }
+
+    /**
+     * @return the index of the message nearest to time, the first one of equally near messages
+     */
+    private static int findNearestBruteForce(MessageStore messages, long time) {
+        int best = 0;
+        for (int i = 1; i < messages.size(); i++) {
+            long d = Math.abs(messages.getTime(i) - time), bestD = Math.abs(messages.getTime(best) - time);
+            long t = messages.getTime(i), bestT = messages.getTime(best);
+            if (d < bestD || d == bestD && (t < bestT || t == bestT && i < best)) best = i;
+        }
+        return best;
+    }
+
+    @Test
+    public void emptyIndexFindsZero() {
+        assertEquals(0, new TimeIndex(messages()).findNearest(1000));
+    }
+
+    @Test
+    public void findsFirstOrLastOutsideTheRange() {
+        TimeIndex index = new TimeIndex(messages(100, 200, 300));
+        assertEquals(0, index.findNearest(Long.MIN_VALUE));
+        assertEquals(0, index.findNearest(99));
+        assertEquals(2, index.findNearest(301));
+        assertEquals(2, index.findNearest(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void prefersTheEarlierMessageOnTies() {
+        TimeIndex index = new TimeIndex(messages(100, 200, 200, 200, 300));
+        assertEquals(0, index.findNearest(150));
+        assertEquals(1, index.findNearest(200));
+        assertEquals(1, index.findNearest(250));
+        assertEquals(4, index.findNearest(251));
+        //the last of several messages with the latest time
+        assertEquals(1, new TimeIndex(messages(100, 200, 200)).findNearest(1000));
+    }
+
+    @Test
+    public void sortedMessagesNeedNoOrder() {
+        assertNull(new TimeIndex(messages(1, 1, 2, 3)).getOrder());
+        assertArrayEquals(new int[]{1, 3, 0, 2}, new TimeIndex(messages(5, 1, 5, 2)).getOrder());
+    }
+
+    @Test
+    public void findsNearestInUnsortedMessages() {
+        Random random = new Random(1);
+        for (int run = 0; run < 200; run++) {
+            long[] times = new long[1 + random.nextInt(50)];
+            for (int i = 0; i < times.length; i++) times[i] = random.nextInt(100);
+            MessageStore messages = messages(times);
+            TimeIndex index = new TimeIndex(messages);
+            for (long time = -5; time < 105; time++) {
+                assertEquals(Arrays.toString(times) + " " + time, findNearestBruteForce(messages, time), index.findNearest(time));
+            }
+        }
+    }
+
+    @Test
+    public void extendGivesTheOrderOfANewIndex() {
+        Random random = new Random(2);
+        for (int run = 0; run < 500; run++) {
+            int n = 1 + random.nextInt(50), keep = random.nextInt(n);
+            boolean sorted = random.nextBoolean();
+            long[] times = new long[n];
+            for (int i = 0; i < n; i++) times[i] = sorted ? (i == 0 ? 0 : times[i - 1] + random.nextInt(3)) : random.nextInt(20);
+            MessageStore messages = messages(Arrays.copyOf(times, keep + 1));
+            TimeIndex index = new TimeIndex(messages);
+            messages.truncate(keep);
+            for (int i = keep; i < n; i++) messages.add(random.nextBoolean() ? times[i] : random.nextInt(20), MessageStore.NO_SENDER, 0, 0, (byte) 0);
+            int[] expected = new TimeIndex(messages).getOrder(), actual = index.extend(keep).getOrder();
+            assertArrayEquals(identityIfNull(expected, n), identityIfNull(actual, n));
+        }
+    }
+
+    private static int[] identityIfNull(int[] order, int n) {
+        if (order != null) return order;
+        int[] identity = new int[n];
+        for (int i = 0; i < n; i++) identity[i] = i;
+        return identity;
+    }
+}